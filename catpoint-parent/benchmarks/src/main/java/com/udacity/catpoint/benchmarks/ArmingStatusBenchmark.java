@@ -0,0 +1,55 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link SecurityService#setArmingStatus} transitions. Arming from disarmed deactivates
+ * every sensor, so it scales with the number of sensors; the other transitions should not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArmingStatusBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int sensorCount;
+
+    private InMemorySecurityRepository repository;
+    private SecurityService securityService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = new InMemorySecurityRepository();
+        securityService = new SecurityService(repository, (image, threshold) -> false);
+        securityService.addSensors(Sensors.create(sensorCount));
+    }
+
+    /**
+     * Disarmed to armed home and back.
+     */
+    @Benchmark
+    public AlarmStatus armHomeAndDisarm() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        securityService.setArmingStatus(ArmingStatus.DISARMED);
+        return repository.getAlarmStatus();
+    }
+
+    /**
+     * Disarmed to armed away, then armed home, then disarmed.
+     */
+    @Benchmark
+    public AlarmStatus armAwayThenHomeAndDisarm() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        securityService.setArmingStatus(ArmingStatus.DISARMED);
+        return repository.getAlarmStatus();
+    }
+}
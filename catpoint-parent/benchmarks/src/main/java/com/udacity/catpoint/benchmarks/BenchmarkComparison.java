@@ -0,0 +1,116 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files and exits with status 1 if any benchmark regressed. A
+ * benchmark regressed if its score got worse by more than the threshold percentage and by more
+ * than the combined error of both runs, so noisy benchmarks don't fail the build on their own.
+ * <p>
+ * Usage: BenchmarkComparison [baseline json] [current json] [threshold percent]
+ */
+public class BenchmarkComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BenchmarkComparison <baseline json> <current json> <threshold percent>");
+            System.exit(2);
+        }
+        Path baselineFile = Paths.get(args[0]);
+        if (!Files.exists(baselineFile)) {
+            System.out.println("No baseline at " + baselineFile + ", skipping comparison");
+            return;
+        }
+        Map<String, Result> baseline = read(baselineFile);
+        Map<String, Result> current = read(Paths.get(args[1]));
+        double threshold = Double.parseDouble(args[2]) / 100;
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null) {
+                System.out.printf("NEW        %s: %.3f %s%n", entry.getKey(), after.score, after.unit);
+                continue;
+            }
+            //throughput is better when higher, every other mode measures time
+            double worse = after.higherIsBetter ? before.score - after.score : after.score - before.score;
+            double change = worse / before.score;
+            boolean regressed = change > threshold && worse > before.error + after.error;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "REGRESSED" : "ok",
+                    entry.getKey(), before.score, after.score, after.unit, -change * 100);
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + args[2] + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH result file, keyed by benchmark name, mode and parameters.
+     */
+    private static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            JsonArray runs = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : runs) {
+                JsonObject run = element.getAsJsonObject();
+                String mode = run.get("mode").getAsString();
+                StringBuilder key = new StringBuilder(run.get("benchmark").getAsString()).append(" [").append(mode);
+                if (run.has("params")) {
+                    //sort so the key doesn't depend on the order JMH wrote the parameters in
+                    Map<String, String> params = new TreeMap<>();
+                    run.getAsJsonObject("params").entrySet()
+                            .forEach(param -> params.put(param.getKey(), param.getValue().getAsString()));
+                    params.forEach((name, value) -> key.append(", ").append(name).append('=').append(value));
+                }
+                key.append(']');
+
+                JsonObject metric = run.getAsJsonObject("primaryMetric");
+                JsonElement error = metric.get("scoreError");
+                results.put(key.toString(), new Result(
+                        metric.get("score").getAsDouble(),
+                        error == null || !error.isJsonPrimitive() ? 0 : parseError(error.getAsString()),
+                        metric.get("scoreUnit").getAsString(),
+                        "thrpt".equals(mode)));
+            }
+        }
+        return results;
+    }
+
+    private static double parseError(String error) {
+        //JMH writes "NaN" when there were too few iterations to estimate the error
+        double value = Double.parseDouble(error);
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+    private static class Result {
+        private final double score;
+        private final double error;
+        private final String unit;
+        private final boolean higherIsBetter;
+
+        private Result(double score, double error, String unit, boolean higherIsBetter) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.Sensor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistence cost of {@link PretendDatabaseSecurityRepositoryImpl}, which serializes every sensor
+ * to JSON on each change. Preferences values are limited to 8KB, which is why the sensor counts
+ * stay small here.
+ * <p>
+ * The forked JVM keeps its preferences under target/prefs, so running the benchmark leaves the
+ * application's saved state alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.util.prefs.userRoot=target/prefs")
+public class RepositoryPersistenceBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int sensorCount;
+
+    private PretendDatabaseSecurityRepositoryImpl repository;
+    private List<Sensor> sensors;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = new PretendDatabaseSecurityRepositoryImpl();
+        repository.removeSensors(List.copyOf(repository.getSensors()));
+        sensors = Sensors.create(sensorCount);
+        repository.addSensors(sensors);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        repository.removeSensors(List.copyOf(repository.getSensors()));
+    }
+
+    @Benchmark
+    public Sensor updateSensor() {
+        Sensor sensor = sensors.get(next);
+        next = (next + 1) % sensors.size();
+        sensor.setActive(!sensor.getActive());
+        repository.updateSensor(sensor);
+        return sensor;
+    }
+
+    @Benchmark
+    public int updateAllSensors() {
+        repository.updateSensors(sensors);
+        return sensors.size();
+    }
+
+    @Benchmark
+    public AlarmStatus setAlarmStatus() {
+        AlarmStatus status = repository.getAlarmStatus() == AlarmStatus.NO_ALARM
+                ? AlarmStatus.PENDING_ALARM : AlarmStatus.NO_ALARM;
+        repository.setAlarmStatus(status);
+        return status;
+    }
+}
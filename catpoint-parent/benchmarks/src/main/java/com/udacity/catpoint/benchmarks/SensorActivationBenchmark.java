@@ -0,0 +1,76 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of sensor events in {@link SecurityService} as the number of sensors grows. The repository
+ * is in memory, so only the service's own work is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorActivationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int sensorCount;
+
+    private InMemorySecurityRepository repository;
+    private SecurityService securityService;
+    private List<Sensor> sensors;
+    private BufferedImage cameraImage;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = new InMemorySecurityRepository();
+        securityService = new SecurityService(repository, (image, threshold) -> false);
+        sensors = Sensors.create(sensorCount);
+        securityService.addSensors(sensors);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        cameraImage = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * One sensor activated and then deactivated, cycling through all the sensors.
+     */
+    @Benchmark
+    public AlarmStatus toggleOneSensor() {
+        Sensor sensor = sensors.get(next);
+        next = (next + 1) % sensors.size();
+        securityService.changeSensorActivationStatus(sensor, true);
+        securityService.changeSensorActivationStatus(sensor, false);
+        return repository.getAlarmStatus();
+    }
+
+    /**
+     * Every sensor activated and then deactivated in two batches, starting without an alarm.
+     */
+    @Benchmark
+    public AlarmStatus toggleAllSensors() {
+        //activating several sensors raises the alarm, which deactivating them doesn't clear
+        securityService.setAlarmStatus(AlarmStatus.NO_ALARM);
+        securityService.changeSensorActivationStatus(sensors, true);
+        securityService.changeSensorActivationStatus(sensors, false);
+        return repository.getAlarmStatus();
+    }
+
+    /**
+     * A camera frame without a cat, which checks whether every sensor is inactive.
+     */
+    @Benchmark
+    public AlarmStatus frameWithoutCat() {
+        securityService.processImage(cameraImage);
+        return repository.getAlarmStatus();
+    }
+}
@@ -0,0 +1,50 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.Sensor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link Sensor} methods used by the sorted and hashed sensor collections.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorBenchmark {
+
+    private List<Sensor> sensors;
+    private Sensor first;
+    private Sensor second;
+
+    @Setup
+    public void setUp() {
+        sensors = Sensors.create(1000);
+        first = sensors.get(0);
+        second = sensors.get(1);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return first.compareTo(second);
+    }
+
+    @Benchmark
+    public int hashCodeOfSensor() {
+        return first.hashCode();
+    }
+
+    /**
+     * Sorting a thousand sensors into a TreeSet, as the sensor panel and repository do.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TreeSet<Sensor> sortSensors() {
+        return new TreeSet<>(sensors);
+    }
+}
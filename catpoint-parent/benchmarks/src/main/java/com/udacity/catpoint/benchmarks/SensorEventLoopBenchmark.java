@@ -0,0 +1,59 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorEventLoop;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained event rate of {@link SensorEventLoop}. Publishing blocks while the ring buffer is full,
+ * so once the buffer has filled up this measures how fast the writer thread applies events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xlog:gc:file=target/sensor-event-loop-gc.log")
+public class SensorEventLoopBenchmark {
+
+    @Param({"1000", "100000"})
+    public int sensorCount;
+
+    private SensorEventLoop eventLoop;
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private long timestamp;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepository(), (image, threshold) -> false);
+        List<Sensor> sensors = Sensors.create(sensorCount);
+        securityService.addSensors(sensors);
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        mostSignificantBits = sensors.stream().mapToLong(sensor -> sensor.getSensorId().getMostSignificantBits()).toArray();
+        leastSignificantBits = sensors.stream().mapToLong(sensor -> sensor.getSensorId().getLeastSignificantBits()).toArray();
+        eventLoop = new SensorEventLoop(securityService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        eventLoop.close();
+    }
+
+    /**
+     * Publishes one event, alternating every sensor between active and inactive.
+     */
+    @Benchmark
+    public void publish() {
+        int sensor = next;
+        next = next + 1 == sensorCount ? 0 : next + 1;
+        timestamp++;
+        eventLoop.publish(mostSignificantBits[sensor], leastSignificantBits[sensor], (timestamp / sensorCount & 1) == 0, timestamp);
+    }
+}
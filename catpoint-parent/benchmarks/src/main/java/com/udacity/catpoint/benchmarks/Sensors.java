@@ -0,0 +1,28 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds sensor fixtures shared by the benchmarks.
+ */
+final class Sensors {
+
+    private Sensors() {
+    }
+
+    /**
+     * @return The given number of inactive sensors, cycling through every sensor type
+     */
+    static List<Sensor> create(int count) {
+        SensorType[] types = SensorType.values();
+        List<Sensor> sensors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sensors.add(new Sensor("Sensor " + i, types[i % types.length]));
+        }
+        return sensors;
+    }
+}
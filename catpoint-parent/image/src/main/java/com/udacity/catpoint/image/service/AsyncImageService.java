@@ -0,0 +1,49 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * ImageService that can analyze an image without holding a thread while it waits, e.g. on a
+ * remote service. Callers can keep several images in flight on a single thread.
+ */
+public interface AsyncImageService extends ScoringImageService {
+
+    /**
+     * @param image Image to scan
+     * @return A future completing with what was recognized in the image
+     */
+    CompletableFuture<ImageClassification> classifyAsync(BufferedImage image);
+
+    /**
+     * @param image Image to scan
+     * @param confidenceThreshHold Minimum confidence to consider for cat
+     * @return A future completing with true if the image contains a cat
+     */
+    default CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshHold) {
+        return classifyAsync(image).thenApply(classification -> classification.containsCat(confidenceThreshHold));
+    }
+
+    @Override
+    default ImageClassification classify(BufferedImage image) {
+        return join(classifyAsync(image));
+    }
+
+    @Override
+    default boolean imageContainsCat(BufferedImage image, float confidenceThreshHold) {
+        return join(imageContainsCatAsync(image, confidenceThreshHold));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            //rethrow what the service failed with, as a synchronous service would have
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rekognition.RekognitionAsyncClient;
+import software.amazon.awssdk.services.rekognition.RekognitionAsyncClientBuilder;
+import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
+import software.amazon.awssdk.services.rekognition.model.Image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Variant of {@link AwsImageService} built on the SDK's asynchronous client, for controllers with
+ * many cameras. Requests are sent over a shared pool of kept-alive connections served by a couple
+ * of event loop threads, so any number of images can be in flight without a thread waiting on each.
+ * <p>
+ * It reads the same config.properties keys as AwsImageService, plus optional keys for the pool:
+ *      aws.maxConcurrency=[maximum open connections, and so requests in flight, default 32]
+ *      aws.maxPendingAcquires=[requests that may wait for a connection before failing, default 256]
+ *      aws.eventLoopThreads=[threads serving every connection, default 2]
+ * <p>
+ * Rekognition analyzes a single image per DetectLabels request, so frames can't be batched into
+ * one request; throughput comes from keeping several requests in flight on warm connections.
+ */
+public class AwsAsyncImageService implements AsyncImageService, AutoCloseable {
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 32;
+    public static final int DEFAULT_MAX_PENDING_ACQUIRES = 256;
+    public static final int DEFAULT_EVENT_LOOP_THREADS = 2;
+
+    private static final Logger log = LoggerFactory.getLogger(AwsAsyncImageService.class);
+
+    private RekognitionAsyncClient rekognitionClient;
+    private float minConfidence = AwsImageService.DEFAULT_MIN_CONFIDENCE;
+
+    private final RekognitionImageEncoder encoder = new RekognitionImageEncoder();
+
+    public AwsAsyncImageService() {
+        this(AwsImageService.loadProperties());
+    }
+
+    /**
+     * @param props The settings described above, or null to leave the service unconfigured
+     */
+    public AwsAsyncImageService(Properties props) {
+        if (props == null) {
+            return;
+        }
+        minConfidence = AwsImageService.minConfidence(props);
+        long attemptTimeoutMillis = AwsImageService.longProperty(props, "aws.attemptTimeoutMillis",
+                AwsImageService.DEFAULT_ATTEMPT_TIMEOUT_MILLIS);
+        NettyNioAsyncHttpClient.Builder httpClient = NettyNioAsyncHttpClient.builder()
+                //Rekognition speaks HTTP/1.1, so every request in flight needs its own connection
+                .protocol(Protocol.HTTP1_1)
+                .maxConcurrency((int) AwsImageService.longProperty(props, "aws.maxConcurrency", DEFAULT_MAX_CONCURRENCY))
+                .maxPendingConnectionAcquires((int) AwsImageService.longProperty(props, "aws.maxPendingAcquires",
+                        DEFAULT_MAX_PENDING_ACQUIRES))
+                .connectionAcquisitionTimeout(Duration.ofMillis(attemptTimeoutMillis))
+                .connectionTimeout(Duration.ofMillis(attemptTimeoutMillis))
+                .readTimeout(Duration.ofMillis(attemptTimeoutMillis))
+                .writeTimeout(Duration.ofMillis(attemptTimeoutMillis))
+                //keep connections warm between frames, a new TLS handshake costs more than the request
+                .connectionMaxIdleTime(Duration.ofSeconds(60))
+                .tcpKeepAlive(true)
+                .eventLoopGroupBuilder(SdkEventLoopGroup.builder()
+                        .numberOfThreads((int) AwsImageService.longProperty(props, "aws.eventLoopThreads",
+                                DEFAULT_EVENT_LOOP_THREADS)));
+
+        RekognitionAsyncClientBuilder builder = RekognitionAsyncClient.builder()
+                .credentialsProvider(AwsImageService.credentialsProvider(props))
+                .region(Region.of(props.getProperty("aws.region")))
+                .overrideConfiguration(AwsImageService.overrideConfiguration(props))
+                .httpClientBuilder(httpClient);
+        String endpoint = props.getProperty("aws.endpoint");
+        if (endpoint != null) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        rekognitionClient = builder.build();
+    }
+
+    /**
+     * Encodes the image on the calling thread and sends it without waiting for the answer.
+     * @param image Image to scan
+     * @return A future completing with every label recognized with at least aws.minConfidence
+     */
+    @Override
+    public CompletableFuture<ImageClassification> classifyAsync(BufferedImage image) {
+        return detectLabels(image, minConfidence);
+    }
+
+    /**
+     * @param image Image to scan
+     * @param confidenceThreshHold Minimum threshhold to consider for cat. For example, 90.0f would require 90% confidence minimum
+     * @return A future completing with true if the image contains a cat
+     */
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshHold) {
+        return detectLabels(image, confidenceThreshHold)
+                .thenApply(classification -> classification.containsCat(confidenceThreshHold));
+    }
+
+    private CompletableFuture<ImageClassification> detectLabels(BufferedImage image, float minConfidence) {
+        if (rekognitionClient == null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("AWS Rekognition is not configured, see config.properties"));
+        }
+        Image awsImage;
+        try {
+            awsImage = Image.builder().bytes(encoder.encode(image)).build();
+        } catch (IOException ioe) {
+            log.error("Error building image byte array", ioe);
+            return CompletableFuture.completedFuture(ImageClassification.NONE);
+        }
+        DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(minConfidence).build();
+        return rekognitionClient.detectLabels(detectLabelsRequest).thenApply(AwsImageService::classification);
+    }
+
+    /**
+     * Closes the connections and stops the event loop threads.
+     */
+    @Override
+    public void close() {
+        if (rekognitionClient != null) {
+            rekognitionClient.close();
+        }
+    }
+}
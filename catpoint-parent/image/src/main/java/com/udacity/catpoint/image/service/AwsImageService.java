@@ -4,19 +4,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.rekognition.RekognitionClientBuilder;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsResponse;
 import software.amazon.awssdk.services.rekognition.model.Image;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
@@ -32,32 +35,104 @@ import java.util.stream.Collectors;
  *      aws.id=[your access key id]
  *      aws.secret=[your Secret access key]
  *      aws.region=[an aws region of choice. For example: us-east-2]
+ *
+ * Optional keys bound how long a call may take, so a degraded remote can't stall image analysis:
+ *      aws.callTimeoutMillis=[limit for the whole call including retries, default 3000]
+ *      aws.attemptTimeoutMillis=[limit for each HTTP attempt, default 1000]
+ *      aws.maxRetries=[retries after a failed or timed out attempt, default 1]
+ *      aws.endpoint=[URL of another DetectLabels endpoint, e.g. a local stub for testing]
+ *      aws.minConfidence=[lowest label confidence {@link #classify} asks for, default 20]
+ *
+ * Wrap this service in a {@link ResilientImageService} to fall back to a local service when AWS is unavailable.
  */
-public class AwsImageService implements ImageService{
+public class AwsImageService implements ScoringImageService {
 
-    private final Logger log = LoggerFactory.getLogger(AwsImageService.class);
+    public static final long DEFAULT_CALL_TIMEOUT_MILLIS = 3000;
+    public static final long DEFAULT_ATTEMPT_TIMEOUT_MILLIS = 1000;
+    public static final int DEFAULT_MAX_RETRIES = 1;
+    public static final float DEFAULT_MIN_CONFIDENCE = 20.0f;
 
-    //aws recommendation is to maintain only a single instance of client objects
-    private static RekognitionClient rekognitionClient;
+    private static final Logger log = LoggerFactory.getLogger(AwsImageService.class);
+
+    //aws recommendation is to maintain only a single instance of client objects, so share the service
+    private RekognitionClient rekognitionClient;
+    private float minConfidence = DEFAULT_MIN_CONFIDENCE;
+
+    private final RekognitionImageEncoder encoder = new RekognitionImageEncoder();
 
     public AwsImageService() {
+        this(loadProperties());
+    }
+
+    /**
+     * @param props The settings described above, or null to leave the service unconfigured
+     */
+    public AwsImageService(Properties props) {
+        if (props == null) {
+            return;
+        }
+        minConfidence = minConfidence(props);
+        RekognitionClientBuilder builder = RekognitionClient.builder()
+                .credentialsProvider(credentialsProvider(props))
+                .region(Region.of(props.getProperty("aws.region")))
+                .overrideConfiguration(overrideConfiguration(props));
+        String endpoint = props.getProperty("aws.endpoint");
+        if (endpoint != null) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        rekognitionClient = builder.build();
+    }
+
+    static AwsCredentialsProvider credentialsProvider(Properties props) {
+        AwsCredentials awsCredentials = AwsBasicCredentials.create(props.getProperty("aws.id"), props.getProperty("aws.secret"));
+        return StaticCredentialsProvider.create(awsCredentials);
+    }
+
+    static ClientOverrideConfiguration overrideConfiguration(Properties props) {
+        return ClientOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofMillis(longProperty(props, "aws.callTimeoutMillis", DEFAULT_CALL_TIMEOUT_MILLIS)))
+                .apiCallAttemptTimeout(Duration.ofMillis(longProperty(props, "aws.attemptTimeoutMillis", DEFAULT_ATTEMPT_TIMEOUT_MILLIS)))
+                .retryPolicy(RetryPolicy.builder()
+                        .numRetries((int) longProperty(props, "aws.maxRetries", DEFAULT_MAX_RETRIES))
+                        .build())
+                .build();
+    }
+
+    static float minConfidence(Properties props) {
+        String value = props.getProperty("aws.minConfidence");
+        return value == null ? DEFAULT_MIN_CONFIDENCE : Float.parseFloat(value.trim());
+    }
+
+    static Properties loadProperties() {
         Properties props = new Properties();
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+        try (InputStream is = AwsImageService.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (is == null) {
+                log.error("Unable to initialize AWS Rekognition, no properties file found");
+                return null;
+            }
             props.load(is);
         } catch (IOException ioe ) {
-            log.error("Unable to initialize AWS Rekognition, no properties file found", ioe);
-            return;
+            log.error("Unable to initialize AWS Rekognition, properties file could not be read", ioe);
+            return null;
         }
+        return props;
+    }
 
-        String awsId = props.getProperty("aws.id");
-        String awsSecret = props.getProperty("aws.secret");
-        String awsRegion = props.getProperty("aws.region");
+    static long longProperty(Properties props, String key, long defaultValue) {
+        String value = props.getProperty(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
 
-        AwsCredentials awsCredentials = AwsBasicCredentials.create(awsId, awsSecret);
-        rekognitionClient = RekognitionClient.builder()
-                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
-                .region(Region.of(awsRegion))
-                .build();
+    /**
+     * Returns everything Rekognition recognized in the image with at least aws.minConfidence, so
+     * the caller can apply any higher threshold to the scores. Images carrying their original JPEG
+     * bytes (see {@link JpegSource}) are sent as-is; others are downscaled and re-encoded.
+     * @param image Image to scan
+     * @return The labels with their confidence
+     */
+    @Override
+    public ImageClassification classify(BufferedImage image) {
+        return detectLabels(image, minConfidence);
     }
 
     /**
@@ -68,23 +143,30 @@ public class AwsImageService implements ImageService{
      */
     @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshHold) {
+        return detectLabels(image, confidenceThreshHold).containsCat(confidenceThreshHold);
+    }
+
+    private ImageClassification detectLabels(BufferedImage image, float minConfidence) {
+        if (rekognitionClient == null) {
+            throw new IllegalStateException("AWS Rekognition is not configured, see config.properties");
+        }
         Image awsImage;
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "jpg", os);
-            awsImage = Image.builder().bytes(SdkBytes.fromByteArray(os.toByteArray())).build();
+        try {
+            awsImage = Image.builder().bytes(encoder.encode(image)).build();
         } catch (IOException ioe) {
             log.error("Error building image byte array", ioe);
-            return false;
+            return ImageClassification.NONE;
         }
-        DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshHold).build();
-        DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
-        logLabelsForFun(response);
-        return response.labels().stream().anyMatch(l -> l.name().toLowerCase().contains("cat"));
+        DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(minConfidence).build();
+        return classification(rekognitionClient.detectLabels(detectLabelsRequest));
     }
 
-    private void logLabelsForFun(DetectLabelsResponse response) {
-        log.info(response.labels().stream()
-                .map(label -> String.format("%s(%.1f%%)", label.name(), label.confidence()))
-                .collect(Collectors.joining(", ")));
+    static ImageClassification classification(DetectLabelsResponse response) {
+        ImageClassification classification = new ImageClassification(response.labels().stream()
+                .map(label -> new ScoredLabel(label.name(), label.confidence()))
+                .collect(Collectors.toList()));
+        //log labels for fun
+        log.info(classification.toString());
+        return classification;
     }
 }
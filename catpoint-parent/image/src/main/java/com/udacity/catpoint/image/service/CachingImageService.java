@@ -0,0 +1,279 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * ImageService decorator that remembers verdicts for images it has already seen. Images are keyed
+ * by a 64-bit difference hash (dHash) of their brightness. A frame whose hash is within a small
+ * Hamming distance of a cached one reuses that entry, so frames that only differ by sensor noise
+ * or compression artifacts are only sent to the wrapped service once.
+ * <p>
+ * The cache holds at most a fixed number of entries, evicting the least recently used one when
+ * full, and entries expire after a fixed time so a changed scene is eventually re-analyzed.
+ * <p>
+ * Use {@link #of(ImageService)} to keep a {@link ScoringImageService} scoring: its classifications
+ * are cached rather than verdicts, so one entry answers for every threshold.
+ */
+public class CachingImageService implements ImageService {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_TTL_MILLIS = 30_000;
+    public static final int DEFAULT_MAX_HAMMING_DISTANCE = 4;
+
+    //threshold of the entries cached by Scoring, which hold classifications valid for any threshold
+    private static final float ANY_THRESHOLD = Float.NaN;
+
+    //dHash compares each cell with its right neighbour, so the grid is one column wider than the hash
+    private static final int HASH_WIDTH = 8;
+    private static final int HASH_HEIGHT = 8;
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private final ImageService delegate;
+    private final long ttlNanos;
+    private final int maxHammingDistance;
+    private final Map<Key, Entry> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingImageService(ImageService delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_MAX_HAMMING_DISTANCE);
+    }
+
+    /**
+     * @param delegate Service that analyzes images missing from the cache
+     * @param maxEntries Maximum number of verdicts to keep
+     * @param ttlMillis How long a verdict may be served from the cache
+     * @param maxHammingDistance Number of hash bits a frame may differ by and still reuse a
+     *                           cached verdict. Zero only matches identical hashes.
+     */
+    public CachingImageService(ImageService delegate, int maxEntries, long ttlMillis, int maxHammingDistance) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxHammingDistance = maxHammingDistance;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Wraps the given service, keeping it a ScoringImageService if it is one. An
+     * AsyncImageService is only kept scoring, as cache hits are answered on the calling thread.
+     */
+    public static CachingImageService of(ImageService delegate) {
+        if (delegate instanceof ScoringImageService) {
+            return new Scoring((ScoringImageService) delegate);
+        }
+        return new CachingImageService(delegate);
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        if (image == null) {
+            return delegate.imageContainsCat(null, confidenceThreshhold);
+        }
+        return lookup(image, confidenceThreshhold,
+                frame -> ImageClassification.verdict(delegate.imageContainsCat(frame, confidenceThreshhold)))
+                .containsCat(confidenceThreshhold);
+    }
+
+    /**
+     * Returns the cached classification of the closest matching frame analyzed for the same
+     * threshold, or analyzes the image and caches the result.
+     */
+    ImageClassification lookup(BufferedImage image, float confidenceThreshold,
+                               Function<BufferedImage, ImageClassification> analyze) {
+        long hash = differenceHash(image);
+        long now = System.nanoTime();
+        synchronized (cache) {
+            Key match = closest(hash, confidenceThreshold, now);
+            if (match != null) {
+                hits.increment();
+                //get() rather than the scan's reference, so the entry becomes most recently used
+                return cache.get(match).classification;
+            }
+        }
+
+        misses.increment();
+        ImageClassification classification = analyze.apply(image);
+        synchronized (cache) {
+            cache.put(new Key(hash, confidenceThreshold), new Entry(classification, now));
+        }
+        return classification;
+    }
+
+    /**
+     * Finds the live entry for the threshold whose hash differs from the given one in the fewest
+     * bits, as long as that is within the maximum distance. Expired entries met on the way are dropped.
+     */
+    private Key closest(long hash, float confidenceThreshold, long now) {
+        Key exact = new Key(hash, confidenceThreshold);
+        Entry entry = cache.get(exact);
+        if (entry != null && now - entry.createdNanos < ttlNanos) {
+            return exact;
+        }
+
+        Key best = null;
+        int bestDistance = maxHammingDistance + 1;
+        for (Iterator<Map.Entry<Key, Entry>> iterator = cache.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Key, Entry> candidate = iterator.next();
+            if (now - candidate.getValue().createdNanos >= ttlNanos) {
+                iterator.remove();
+                evictions.increment();
+                continue;
+            }
+            Key key = candidate.getKey();
+            if (Float.compare(key.confidenceThreshold, confidenceThreshold) != 0) {
+                continue;
+            }
+            int distance = Long.bitCount(key.hash ^ hash);
+            if (distance < bestDistance) {
+                best = key;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of entries dropped, either because the cache was full or because they expired
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Computes a difference hash: the image is reduced to a 9x8 grid of average brightness values
+     * and each bit records whether a cell is brighter than its right neighbour.
+     */
+    static long differenceHash(BufferedImage image) {
+        int columns = HASH_WIDTH + 1;
+        int[] brightness = new int[columns * HASH_HEIGHT];
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        for (int row = 0; row < HASH_HEIGHT; row++) {
+            for (int column = 0; column < columns; column++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = (int) (((row * SAMPLES_PER_CELL + sy) * 2L + 1) * height / (2L * HASH_HEIGHT * SAMPLES_PER_CELL));
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = (int) (((column * SAMPLES_PER_CELL + sx) * 2L + 1) * width / (2L * columns * SAMPLES_PER_CELL));
+                        int rgb = image.getRGB(x, y);
+                        sum += ((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114;
+                    }
+                }
+                brightness[row * columns + column] = sum;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < HASH_HEIGHT; row++) {
+            for (int column = 0; column < HASH_WIDTH; column++) {
+                hash <<= 1;
+                if (brightness[row * columns + column] > brightness[row * columns + column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static class Key {
+        private final long hash;
+        private final float confidenceThreshold;
+
+        private Key(long hash, float confidenceThreshold) {
+            this.hash = hash;
+            this.confidenceThreshold = confidenceThreshold;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash && Float.compare(key.confidenceThreshold, confidenceThreshold) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(hash) + Float.hashCode(confidenceThreshold);
+        }
+    }
+
+    private static class Entry {
+        private final ImageClassification classification;
+        private final long createdNanos;
+
+        private Entry(ImageClassification classification, long createdNanos) {
+            this.classification = classification;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    /**
+     * Caches the classifications of a ScoringImageService, so callers can still apply their own
+     * thresholds, and every threshold shares the same entries.
+     */
+    public static class Scoring extends CachingImageService implements ScoringImageService {
+
+        private final ScoringImageService delegate;
+
+        public Scoring(ScoringImageService delegate) {
+            this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_MAX_HAMMING_DISTANCE);
+        }
+
+        public Scoring(ScoringImageService delegate, int maxEntries, long ttlMillis, int maxHammingDistance) {
+            super(delegate, maxEntries, ttlMillis, maxHammingDistance);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ImageClassification classify(BufferedImage image) {
+            if (image == null) {
+                return delegate.classify(null);
+            }
+            return lookup(image, ANY_THRESHOLD, delegate::classify);
+        }
+
+        @Override
+        public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+            return classify(image).containsCat(confidenceThreshhold);
+        }
+    }
+}
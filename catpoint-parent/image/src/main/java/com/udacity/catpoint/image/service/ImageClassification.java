@@ -0,0 +1,75 @@
+package com.udacity.catpoint.image.service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The labels an image service found in an image, with the confidence that one of them is a cat.
+ * Callers decide whether that is a cat by comparing the confidence to their own threshold, so the
+ * threshold can change without analyzing the image again.
+ */
+public class ImageClassification {
+
+    /**
+     * Nothing recognized, a cat confidence of 0.
+     */
+    public static final ImageClassification NONE = new ImageClassification(List.of());
+
+    private static final String CAT = "cat";
+
+    private final List<ScoredLabel> labels;
+    private final float catConfidence;
+
+    /**
+     * @param labels Everything recognized in the image. Any label whose name contains "cat"
+     *               counts towards the cat confidence, as AwsImageService has always done.
+     */
+    public ImageClassification(List<ScoredLabel> labels) {
+        this.labels = List.copyOf(labels);
+        float confidence = 0;
+        for (ScoredLabel label : this.labels) {
+            if (label.getName().toLowerCase().contains(CAT)) {
+                confidence = Math.max(confidence, label.getConfidence());
+            }
+        }
+        this.catConfidence = confidence;
+    }
+
+    /**
+     * @param confidence The confidence, from 0 to 100, that the image contains a cat
+     */
+    public static ImageClassification cat(float confidence) {
+        return new ImageClassification(List.of(new ScoredLabel("Cat", confidence)));
+    }
+
+    /**
+     * Turns the verdict of a service that can't score images into a classification that is
+     * certain either way, so it compares the same against any threshold.
+     */
+    public static ImageClassification verdict(boolean cat) {
+        return cat ? cat(100) : NONE;
+    }
+
+    public List<ScoredLabel> getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return The highest confidence, from 0 to 100, among the cat labels, or 0 if there are none
+     */
+    public float getCatConfidence() {
+        return catConfidence;
+    }
+
+    /**
+     * @param confidenceThreshold Minimum confidence to consider for cat
+     */
+    public boolean containsCat(float confidenceThreshold) {
+        return catConfidence > 0 && catConfidence >= confidenceThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return labels.stream().map(ScoredLabel::toString).collect(Collectors.joining(", "));
+    }
+}
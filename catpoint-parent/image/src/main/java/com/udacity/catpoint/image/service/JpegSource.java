@@ -0,0 +1,52 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Hashtable;
+
+/**
+ * Keeps the original JPEG bytes of a decoded image attached to it, so image services that need a
+ * JPEG can forward the file as-is instead of re-encoding the pixels. The bytes travel as a
+ * property of the BufferedImage, so they survive being passed through any ImageService decorator.
+ * <p>
+ * The attached bytes are only valid as long as the image pixels are not modified.
+ */
+public final class JpegSource {
+
+    private static final String SOURCE_BYTES_PROPERTY = "com.udacity.catpoint.image.jpegSource";
+
+    private JpegSource() {
+    }
+
+    /**
+     * Returns an image sharing the pixels of the provided image with the JPEG bytes it was decoded
+     * from attached. If the bytes are not a JPEG, the image is returned unchanged.
+     *
+     * @param image Image decoded from the bytes
+     * @param encoded The bytes the image was decoded from
+     */
+    public static BufferedImage attach(BufferedImage image, byte[] encoded) {
+        if (image == null || !isJpeg(encoded)) {
+            return image;
+        }
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(SOURCE_BYTES_PROPERTY, encoded);
+        return new BufferedImage(image.getColorModel(), image.getRaster(), image.isAlphaPremultiplied(), properties);
+    }
+
+    /**
+     * @return The JPEG bytes attached to the image, or null if there are none
+     */
+    public static byte[] bytesOf(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        Object bytes = image.getProperty(SOURCE_BYTES_PROPERTY);
+        return bytes == Image.UndefinedProperty ? null : (byte[]) bytes;
+    }
+
+    private static boolean isJpeg(byte[] encoded) {
+        //every JPEG starts with the start-of-image marker
+        return encoded != null && encoded.length > 2 && (encoded[0] & 0xFF) == 0xFF && (encoded[1] & 0xFF) == 0xD8;
+    }
+}
@@ -0,0 +1,187 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Image Recognition Service that runs entirely in-process, so it keeps working without network
+ * access and answers in a few milliseconds.
+ * <p>
+ * Each image is reduced to a 64x64 thumbnail and described by a histogram of oriented gradients
+ * (shape) plus a coarse color histogram (fur color). A logistic regression model loaded from a
+ * model file turns those features into a cat confidence between 0 and 100.
+ * <p>
+ * The bundled model was fitted on a few regions of the sample images in this project only, so it
+ * is a smoke-test model rather than a general cat detector. To build a real one, train it with
+ * {@link LocalImageServiceTrainer} and pass the model file to {@link #LocalImageService(Path)}.
+ */
+public class LocalImageService implements ScoringImageService {
+
+    private static final String BUNDLED_MODEL = "local-cat-model.bin";
+    static final int MODEL_MAGIC = 0x4341544D; // "CATM"
+
+    //feature layout: 8x8 cells of 9 orientation bins, followed by a 4x4x4 color histogram
+    private static final int THUMBNAIL_SIZE = 64;
+    private static final int CELL_SIZE = 8;
+    private static final int CELLS = THUMBNAIL_SIZE / CELL_SIZE;
+    private static final int ORIENTATION_BINS = 9;
+    private static final int COLOR_LEVELS = 4;
+    static final int FEATURE_COUNT = CELLS * CELLS * ORIENTATION_BINS + COLOR_LEVELS * COLOR_LEVELS * COLOR_LEVELS;
+
+    private final float[] weights;
+    private final float bias;
+
+    /**
+     * Creates a service using the model bundled with this module.
+     */
+    public LocalImageService() {
+        this(loadModel(BUNDLED_MODEL, () -> LocalImageService.class.getResourceAsStream(BUNDLED_MODEL)));
+    }
+
+    /**
+     * Creates a service using a model file written by {@link LocalImageServiceTrainer}.
+     */
+    public LocalImageService(Path modelFile) {
+        this(loadModel(modelFile.toString(), () -> Files.newInputStream(modelFile)));
+    }
+
+    /**
+     * @param model The bias followed by one weight per feature
+     */
+    private LocalImageService(float[] model) {
+        this.bias = model[0];
+        this.weights = new float[FEATURE_COUNT];
+        System.arraycopy(model, 1, weights, 0, FEATURE_COUNT);
+    }
+
+    /**
+     * Returns true if the provided image contains a cat.
+     * @param image Image to scan
+     * @param confidenceThreshHold Minimum threshhold to consider for cat. For example, 90.0f would require 90% confidence minimum
+     * @return
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshHold) {
+        if (image == null) {
+            return false;
+        }
+        return catConfidence(image) >= confidenceThreshHold;
+    }
+
+    /**
+     * @return The model's confidence that the image contains a cat, as a single "Cat" label
+     */
+    @Override
+    public ImageClassification classify(BufferedImage image) {
+        if (image == null) {
+            return ImageClassification.NONE;
+        }
+        return ImageClassification.cat(catConfidence(image));
+    }
+
+    /**
+     * @return The model's confidence, from 0 to 100, that the image contains a cat
+     */
+    public float catConfidence(BufferedImage image) {
+        return (float) (100.0 / (1.0 + Math.exp(-score(weights, bias, features(image)))));
+    }
+
+    static double score(float[] weights, float bias, float[] features) {
+        double z = bias;
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            z += weights[i] * features[i];
+        }
+        return z;
+    }
+
+    /**
+     * Describes the image as gradient orientation histograms per cell followed by a color histogram.
+     */
+    static float[] features(BufferedImage image) {
+        float[] gray = new float[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+        float[] features = new float[FEATURE_COUNT];
+        int colorOffset = CELLS * CELLS * ORIENTATION_BINS;
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        //build the thumbnail by averaging a 2x2 grid of samples per pixel, collecting colors as we go
+        for (int ty = 0; ty < THUMBNAIL_SIZE; ty++) {
+            for (int tx = 0; tx < THUMBNAIL_SIZE; tx++) {
+                float sum = 0;
+                for (int s = 0; s < 4; s++) {
+                    int x = (int) (((tx * 2L + (s & 1)) * 2 + 1) * width / (4L * THUMBNAIL_SIZE));
+                    int y = (int) (((ty * 2L + (s >> 1)) * 2 + 1) * height / (4L * THUMBNAIL_SIZE));
+                    int rgb = image.getRGB(x, y);
+                    int r = (rgb >> 16) & 0xFF;
+                    int g = (rgb >> 8) & 0xFF;
+                    int b = rgb & 0xFF;
+                    sum += (r * 299 + g * 587 + b * 114) / 1000f;
+                    int bin = (r * COLOR_LEVELS / 256) * COLOR_LEVELS * COLOR_LEVELS
+                            + (g * COLOR_LEVELS / 256) * COLOR_LEVELS + b * COLOR_LEVELS / 256;
+                    features[colorOffset + bin] += 1f / (THUMBNAIL_SIZE * THUMBNAIL_SIZE * 4);
+                }
+                gray[ty * THUMBNAIL_SIZE + tx] = sum / 4 / 255f;
+            }
+        }
+
+        //accumulate unsigned gradient orientations into per-cell histograms
+        for (int y = 1; y < THUMBNAIL_SIZE - 1; y++) {
+            for (int x = 1; x < THUMBNAIL_SIZE - 1; x++) {
+                float gx = gray[y * THUMBNAIL_SIZE + x + 1] - gray[y * THUMBNAIL_SIZE + x - 1];
+                float gy = gray[(y + 1) * THUMBNAIL_SIZE + x] - gray[(y - 1) * THUMBNAIL_SIZE + x];
+                double angle = Math.atan2(gy, gx);
+                if (angle < 0) {
+                    angle += Math.PI;
+                }
+                int bin = Math.min(ORIENTATION_BINS - 1, (int) (angle / Math.PI * ORIENTATION_BINS));
+                int cell = (y / CELL_SIZE) * CELLS + x / CELL_SIZE;
+                features[cell * ORIENTATION_BINS + bin] += (float) Math.sqrt(gx * gx + gy * gy);
+            }
+        }
+
+        //normalize each cell so contrast differences between cameras matter less
+        for (int cell = 0; cell < CELLS * CELLS; cell++) {
+            double norm = 1e-6;
+            for (int bin = 0; bin < ORIENTATION_BINS; bin++) {
+                norm += features[cell * ORIENTATION_BINS + bin] * features[cell * ORIENTATION_BINS + bin];
+            }
+            norm = Math.sqrt(norm);
+            for (int bin = 0; bin < ORIENTATION_BINS; bin++) {
+                features[cell * ORIENTATION_BINS + bin] /= norm;
+            }
+        }
+        return features;
+    }
+
+    private static float[] loadModel(String name, ModelSource source) {
+        try (InputStream is = source.open()) {
+            if (is == null) {
+                throw new IllegalStateException("Cat model " + name + " is missing");
+            }
+            return readModel(is);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to load cat model " + name, ioe);
+        }
+    }
+
+    private static float[] readModel(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MODEL_MAGIC || in.readInt() != FEATURE_COUNT) {
+            throw new IOException("Not a cat model for this feature layout");
+        }
+        float[] model = new float[FEATURE_COUNT + 1];
+        for (int i = 0; i < model.length; i++) {
+            model[i] = in.readFloat();
+        }
+        return model;
+    }
+
+    private interface ModelSource {
+        InputStream open() throws IOException;
+    }
+}
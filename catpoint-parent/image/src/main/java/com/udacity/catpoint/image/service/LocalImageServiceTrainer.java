@@ -0,0 +1,112 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool that trains a model for {@link LocalImageService} with logistic regression and
+ * writes it to a file. Every image is also used mirrored and cropped, which helps a little when
+ * only a few examples are available.
+ * <p>
+ * Usage: LocalImageServiceTrainer [cat image dir] [not-cat image dir] [output model file]
+ */
+public class LocalImageServiceTrainer {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalImageServiceTrainer.class);
+
+    private static final int EPOCHS = 2000;
+    private static final double LEARNING_RATE = 0.5;
+    private static final double REGULARIZATION = 0.001;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: LocalImageServiceTrainer <cat image dir> <not-cat image dir> <output model file>");
+            return;
+        }
+        List<float[]> samples = new ArrayList<>();
+        List<Boolean> labels = new ArrayList<>();
+        addSamples(Paths.get(args[0]), true, samples, labels);
+        addSamples(Paths.get(args[1]), false, samples, labels);
+
+        int featureCount = LocalImageService.FEATURE_COUNT;
+        float[] weights = new float[featureCount];
+        float bias = 0;
+        for (int epoch = 0; epoch < EPOCHS; epoch++) {
+            double[] gradient = new double[featureCount];
+            double biasGradient = 0;
+            for (int i = 0; i < samples.size(); i++) {
+                double p = 1.0 / (1.0 + Math.exp(-LocalImageService.score(weights, bias, samples.get(i))));
+                double error = p - (labels.get(i) ? 1 : 0);
+                for (int f = 0; f < featureCount; f++) {
+                    gradient[f] += error * samples.get(i)[f];
+                }
+                biasGradient += error;
+            }
+            for (int f = 0; f < featureCount; f++) {
+                weights[f] -= LEARNING_RATE * (gradient[f] / samples.size() + REGULARIZATION * weights[f]);
+            }
+            bias -= LEARNING_RATE * biasGradient / samples.size();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(Paths.get(args[2])))) {
+            out.writeInt(LocalImageService.MODEL_MAGIC);
+            out.writeInt(featureCount);
+            out.writeFloat(bias);
+            for (float weight : weights) {
+                out.writeFloat(weight);
+            }
+        }
+        log.info("Trained cat model on {} samples", samples.size());
+    }
+
+    private static void addSamples(Path directory, boolean cat, List<float[]> samples, List<Boolean> labels) throws IOException {
+        File[] files = directory.toFile().listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                continue;
+            }
+            for (BufferedImage variant : variants(image)) {
+                samples.add(LocalImageService.features(variant));
+                labels.add(cat);
+            }
+        }
+    }
+
+    private static List<BufferedImage> variants(BufferedImage image) {
+        List<BufferedImage> variants = new ArrayList<>();
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int cw = w * 4 / 5;
+        int ch = h * 4 / 5;
+        variants.add(image);
+        variants.add(image.getSubimage(0, 0, cw, ch));
+        variants.add(image.getSubimage(w - cw, 0, cw, ch));
+        variants.add(image.getSubimage(0, h - ch, cw, ch));
+        variants.add(image.getSubimage(w - cw, h - ch, cw, ch));
+        variants.add(image.getSubimage((w - cw) / 2, (h - ch) / 2, cw, ch));
+
+        BufferedImage mirrored = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                mirrored.setRGB(w - 1 - x, y, image.getRGB(x, y));
+            }
+        }
+        variants.add(mirrored);
+        return variants;
+    }
+}
@@ -0,0 +1,180 @@
+package com.udacity.catpoint.image.service;
+
+import software.amazon.awssdk.core.SdkBytes;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Turns camera images into the JPEG bytes sent to Rekognition with as little work as possible.
+ * Images that still carry their original JPEG file are forwarded untouched. Everything else is
+ * downscaled to the largest size worth sending and encoded with pooled writers into pooled,
+ * pre-sized buffers, leaving a single copy into the exact-size array handed to the SDK.
+ */
+class RekognitionImageEncoder {
+
+    static final int DEFAULT_MAX_DIMENSION = 1280;
+    static final float DEFAULT_QUALITY = 0.85f;
+
+    //Rekognition rejects images passed as bytes above this size
+    private static final int MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+    private static final int POOL_SIZE = 4;
+
+    private final int maxDimension;
+    private final float quality;
+    private final BlockingQueue<ImageWriter> writers = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<ByteArrayImageOutputStream> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+    private volatile int expectedSize = 64 * 1024;
+
+    RekognitionImageEncoder() {
+        this(DEFAULT_MAX_DIMENSION, DEFAULT_QUALITY);
+    }
+
+    RekognitionImageEncoder(int maxDimension, float quality) {
+        this.maxDimension = maxDimension;
+        this.quality = quality;
+    }
+
+    SdkBytes encode(BufferedImage image) throws IOException {
+        byte[] source = JpegSource.bytesOf(image);
+        if (source != null && source.length <= MAX_IMAGE_BYTES) {
+            return SdkBytes.fromByteArrayUnsafe(source);
+        }
+
+        BufferedImage scaled = prepare(image);
+        ImageWriter writer = writers.poll();
+        if (writer == null) {
+            writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        }
+        ByteArrayImageOutputStream out = buffers.poll();
+        if (out == null) {
+            out = new ByteArrayImageOutputStream(expectedSize);
+        }
+        try {
+            out.clear();
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(scaled, null, null), param);
+            out.flush();
+            //remember the typical size so new buffers rarely need to grow
+            expectedSize = Math.max(expectedSize, out.size());
+            return SdkBytes.fromByteArrayUnsafe(out.toByteArray());
+        } finally {
+            writer.reset();
+            writers.offer(writer);
+            buffers.offer(out);
+        }
+    }
+
+    /**
+     * Downscales the image so its longest side is at most the maximum dimension, and drops any
+     * alpha channel, which JPEG cannot store.
+     */
+    private BufferedImage prepare(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        if (scale == 1.0 && !image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Seekable in-memory output for ImageWriter that can be reused between images.
+     */
+    private static class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+        private byte[] buffer;
+        private int length;
+
+        private ByteArrayImageOutputStream(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        private void clear() {
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+            length = 0;
+        }
+
+        private int size() {
+            return length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            buffer[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, buffer, (int) streamPos, len);
+            streamPos += len;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            bitOffset = 0;
+            return streamPos < length ? buffer[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            bitOffset = 0;
+            if (streamPos >= length) {
+                return -1;
+            }
+            int count = Math.min(len, length - (int) streamPos);
+            System.arraycopy(buffer, (int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        private void ensureCapacity(long capacity) throws IOException {
+            if (capacity > MAX_IMAGE_BYTES * 2L) {
+                throw new IOException("Encoded image is too large");
+            }
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.max(capacity, buffer.length * 2L));
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ImageService decorator that keeps a slow or failing remote service, such as AwsImageService,
+ * from holding up image analysis. Calls to the remote service are bounded by a timeout, and a
+ * local fallback service answers instead whenever the remote one fails or times out.
+ * <p>
+ * If the remote service hasn't answered by the time 95% of its recent calls had, a second request
+ * is sent and whichever answers first wins (hedging). Hedges are limited to a tenth of the calls so
+ * that a remote slowdown isn't made worse by doubling its load.
+ * <p>
+ * A circuit breaker stops calling the remote service after several consecutive failures, so an
+ * outage costs one fallback call per image rather than a timeout. Once the breaker has been open
+ * for a while a single trial call is let through, and the breaker closes again if it succeeds.
+ * <p>
+ * An attempt that times out is left running in the background. The remote service is therefore
+ * handed a copy of the image, so the caller may reuse its image, e.g. a pooled camera frame, as
+ * soon as the call returns.
+ */
+public class ResilientImageService implements ImageService, AutoCloseable {
+
+    public static final long DEFAULT_CALL_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30_000;
+
+    private static final Logger log = LoggerFactory.getLogger(ResilientImageService.class);
+
+    //the hedge delay is the p95 of the latest remote latencies, once there are enough of them
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final int HEDGE_DELAY_UPDATE_INTERVAL = 16;
+    private static final long MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    //every call earns this much of a hedge, and unused hedges are only saved up to the maximum
+    private static final double HEDGE_BUDGET_PER_CALL = 0.1;
+    private static final double MAX_SAVED_HEDGES = 10;
+
+    public enum CircuitState {
+        /** Calls go to the remote service */
+        CLOSED,
+        /** The remote service is failing, calls go to the fallback */
+        OPEN,
+        /** A trial call is allowed through to find out if the remote service has recovered */
+        HALF_OPEN
+    }
+
+    private final ImageService remote;
+    private final ImageService fallback;
+    private final long callTimeoutNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final boolean hedging;
+    private final ExecutorService executor;
+
+    //latency ring buffer and hedge budget, guarded by latencies
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+    private double hedgeBudget;
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+    //circuit breaker, guarded by this
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ResilientImageService(ImageService remote, ImageService fallback) {
+        this(remote, fallback, DEFAULT_CALL_TIMEOUT_MILLIS, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, true);
+    }
+
+    /**
+     * @param remote Service to ask first, e.g. AwsImageService
+     * @param fallback Service that answers when the remote one can't, e.g. LocalImageService
+     * @param callTimeoutMillis How long to wait for the remote service, including any hedged request
+     * @param failureThreshold Number of consecutive remote failures or timeouts that opens the circuit
+     * @param openMillis How long the circuit stays open before a trial call is let through
+     * @param hedging Whether to send a second request when the first is slower than usual
+     */
+    public ResilientImageService(ImageService remote, ImageService fallback, long callTimeoutMillis,
+                                 int failureThreshold, long openMillis, boolean hedging) {
+        this.remote = remote;
+        this.fallback = fallback;
+        this.callTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(callTimeoutMillis);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.hedging = hedging;
+        //remote calls block on the network, so they get their own threads rather than the caller's pool
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "remote-image-analysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshHold) {
+        Route route = route();
+        if (route == Route.FALLBACK) {
+            return useFallback(image, confidenceThreshHold);
+        }
+        RemoteCall call = new RemoteCall(image, confidenceThreshHold);
+        try {
+            //a trial call only needs to find out whether the remote is back, so it isn't hedged
+            boolean verdict = call.await(hedging && route == Route.REMOTE);
+            remoteSucceeded();
+            return verdict;
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            remoteFailed();
+        } catch (ExecutionException e) {
+            failures.increment();
+            log.warn("Remote image analysis failed, using the fallback", e.getCause());
+            remoteFailed();
+        } catch (InterruptedException e) {
+            //not the remote's fault, just give up the trial if this was one
+            Thread.currentThread().interrupt();
+            remoteAbandoned();
+        } finally {
+            call.cancel();
+        }
+        return useFallback(image, confidenceThreshHold);
+    }
+
+    private boolean useFallback(BufferedImage image, float confidenceThreshHold) {
+        fallbacks.increment();
+        return fallback.imageContainsCat(image, confidenceThreshHold);
+    }
+
+    private enum Route {
+        REMOTE,
+        //the single call let through a half open circuit
+        TRIAL,
+        FALLBACK
+    }
+
+    /**
+     * Decides who analyzes the next image, claiming the trial call if the circuit is half open.
+     */
+    private synchronized Route route() {
+        if (state == CircuitState.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            state = CircuitState.HALF_OPEN;
+        }
+        if (state == CircuitState.CLOSED) {
+            return Route.REMOTE;
+        }
+        if (state == CircuitState.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return Route.TRIAL;
+        }
+        return Route.FALLBACK;
+    }
+
+    private synchronized void remoteSucceeded() {
+        if (state != CircuitState.CLOSED) {
+            log.info("Remote image analysis recovered, closing the circuit");
+        }
+        state = CircuitState.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void remoteFailed() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == CircuitState.HALF_OPEN || (state == CircuitState.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Remote image analysis failed {} times in a row, using the fallback for the next {} ms",
+                    consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(openNanos));
+            state = CircuitState.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    private synchronized void remoteAbandoned() {
+        trialInFlight = false;
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+            if (latencyCount >= MIN_HEDGE_SAMPLES && latencyCount % HEDGE_DELAY_UPDATE_INTERVAL == 0) {
+                long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+                Arrays.sort(sorted);
+                long p95 = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+                hedgeDelayNanos = Math.max(MIN_HEDGE_DELAY_NANOS, p95);
+            }
+        }
+    }
+
+    private void earnHedge() {
+        synchronized (latencies) {
+            hedgeBudget = Math.min(MAX_SAVED_HEDGES, hedgeBudget + HEDGE_BUDGET_PER_CALL);
+        }
+    }
+
+    private boolean spendHedge() {
+        synchronized (latencies) {
+            if (hedgeBudget < 1) {
+                return false;
+            }
+            hedgeBudget--;
+            return true;
+        }
+    }
+
+    /**
+     * One call to the remote service, made of one or two concurrent attempts.
+     */
+    private class RemoteCall {
+        private final BufferedImage image;
+        private final float confidenceThreshHold;
+        private final CompletableFuture<Boolean> verdict = new CompletableFuture<>();
+        //attempts that haven't finished yet, the call only fails once all of them have failed
+        private final AtomicInteger running = new AtomicInteger();
+        private final List<Future<?>> attempts = new ArrayList<>(2);
+
+        RemoteCall(BufferedImage image, float confidenceThreshHold) {
+            this.image = copyOf(image);
+            this.confidenceThreshHold = confidenceThreshHold;
+        }
+
+        boolean await(boolean hedge) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + callTimeoutNanos;
+            earnHedge();
+            launch();
+            long hedgeDelay = hedgeDelayNanos;
+            if (hedge && hedgeDelay < callTimeoutNanos) {
+                try {
+                    return verdict.get(hedgeDelay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (spendHedge()) {
+                        hedges.increment();
+                        launch();
+                    }
+                }
+            }
+            return verdict.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        private void launch() {
+            running.incrementAndGet();
+            attempts.add(executor.submit(this::attempt));
+        }
+
+        private void attempt() {
+            long start = System.nanoTime();
+            try {
+                boolean cat = remote.imageContainsCat(image, confidenceThreshHold);
+                recordLatency(System.nanoTime() - start);
+                running.decrementAndGet();
+                verdict.complete(cat);
+            } catch (Throwable e) {
+                //errors too, an attempt that never completes the verdict leaves the caller waiting for the timeout
+                if (running.decrementAndGet() == 0) {
+                    verdict.completeExceptionally(e);
+                }
+            }
+        }
+
+        /**
+         * Stops attempts that are still waiting for the remote service.
+         */
+        void cancel() {
+            attempts.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+
+    /**
+     * Copies the pixels of an image, keeping its properties such as the attached JPEG bytes.
+     */
+    private static BufferedImage copyOf(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        Hashtable<String, Object> properties = new Hashtable<>();
+        String[] names = image.getPropertyNames();
+        if (names != null) {
+            for (String name : names) {
+                properties.put(name, image.getProperty(name));
+            }
+        }
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), properties);
+    }
+
+    public synchronized CircuitState getCircuitState() {
+        if (state == CircuitState.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            return CircuitState.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return Number of images analyzed by the fallback service, for any reason
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return Number of second requests sent because the first was slow
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return Number of remote calls that didn't answer within the call timeout
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return Number of remote calls that failed with an exception
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Stops the threads waiting on the remote service. The fallback service is not closed.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,29 @@
+package com.udacity.catpoint.image.service;
+
+import java.util.Objects;
+
+/**
+ * Something an image service recognized in an image, with its confidence from 0 to 100.
+ */
+public class ScoredLabel {
+    private final String name;
+    private final float confidence;
+
+    public ScoredLabel(String name, float confidence) {
+        this.name = Objects.requireNonNull(name);
+        this.confidence = confidence;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%.1f%%)", name, confidence);
+    }
+}
@@ -0,0 +1,22 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * ImageService that reports how confident it is rather than only whether an image passes a
+ * threshold. Callers can keep the scores and apply thresholds, hysteresis or voting across frames
+ * themselves without asking the service again.
+ */
+public interface ScoringImageService extends ImageService {
+
+    /**
+     * @param image Image to scan
+     * @return What was recognized in the image, with the confidence that it contains a cat
+     */
+    ImageClassification classify(BufferedImage image);
+
+    @Override
+    default boolean imageContainsCat(BufferedImage image, float confidenceThreshHold) {
+        return classify(image).containsCat(confidenceThreshHold);
+    }
+}
@@ -1,9 +1,12 @@
 module image {
     requires org.slf4j;
-    requires software.amazon.awssdk.auth;
-    requires software.amazon.awssdk.core;
-    requires software.amazon.awssdk.services.rekognition;
-    requires software.amazon.awssdk.regions;
+    //only the AWS image services need the SDK, deployments using FakeImageService can leave it out
+    requires static software.amazon.awssdk.auth;
+    requires static software.amazon.awssdk.core;
+    requires static software.amazon.awssdk.http;
+    requires static software.amazon.awssdk.http.nio.netty;
+    requires static software.amazon.awssdk.services.rekognition;
+    requires static software.amazon.awssdk.regions;
     requires java.desktop;
     exports com.udacity.catpoint.image.service;
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AwsAsyncImageServiceTest {
+
+    private static final float CONFIDENCE = 50.0f;
+
+    private final BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+
+    @Test
+    public void test_asyncServiceAgainstStub_labelsDecideVerdict() throws IOException {
+        try (DetectLabelsStubServer stub = new DetectLabelsStubServer();
+             AwsAsyncImageService aws = new AwsAsyncImageService(stub.clientProperties(2000))) {
+            assertTrue(aws.imageContainsCatAsync(image, CONFIDENCE).join());
+            stub.setLabel("Dog");
+            assertFalse(aws.imageContainsCat(image, CONFIDENCE));
+        }
+    }
+
+    @Test
+    public void test_classifyAgainstStub_catScoreReturned() throws IOException {
+        try (DetectLabelsStubServer stub = new DetectLabelsStubServer();
+             AwsAsyncImageService aws = new AwsAsyncImageService(stub.clientProperties(2000))) {
+            // the stub labels every image a cat with 97.5% confidence
+            assertEquals(97.5f, aws.classifyAsync(image).join().getCatConfidence(), 0.01f);
+            assertEquals(97.5f, new AwsImageService(stub.clientProperties(2000)).classify(image).getCatConfidence(), 0.01f);
+            stub.setLabel("Dog");
+            assertEquals(0f, aws.classify(image).getCatConfidence());
+        }
+    }
+
+    @Test
+    public void test_manyImagesInFlight_answeredConcurrently() throws IOException {
+        try (DetectLabelsStubServer stub = new DetectLabelsStubServer();
+             AwsAsyncImageService aws = new AwsAsyncImageService(stub.clientProperties(2000))) {
+            // open the first connection before timing
+            assertTrue(aws.imageContainsCat(image, CONFIDENCE));
+            stub.setLatencyMillis(200);
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Boolean>> verdicts = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                verdicts.add(aws.imageContainsCatAsync(image, CONFIDENCE));
+            }
+            verdicts.forEach(verdict -> assertTrue(verdict.join()));
+
+            // one at a time the images would take 3.2 seconds
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1600);
+            assertTrue(stub.getMaxActiveRequests() > 1);
+            assertEquals(17, stub.getRequestCount());
+        }
+    }
+
+    @Test
+    public void test_stubFailing_errorRethrownFromSyncCall() throws IOException {
+        try (DetectLabelsStubServer stub = new DetectLabelsStubServer();
+             AwsAsyncImageService aws = new AwsAsyncImageService(stub.clientProperties(2000))) {
+            stub.setFailing(true);
+            assertThrows(CompletionException.class, () -> aws.imageContainsCatAsync(image, CONFIDENCE).join());
+            // the synchronous call fails with the SDK's exception, as AwsImageService would
+            RuntimeException e = assertThrows(RuntimeException.class, () -> aws.imageContainsCat(image, CONFIDENCE));
+            assertFalse(e instanceof CompletionException);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingImageServiceTest {
+
+    private static final float CONFIDENCE = 50.0f;
+    //9x8 blocks of 8x8 pixels, lining up with the cells the difference hash averages
+    private static final int BLOCK = 8;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final ImageService delegate = (image, confidence) -> {
+        calls.incrementAndGet();
+        return true;
+    };
+
+    @Test
+    public void test_sameFrameTwice_secondServedFromCache() {
+        CachingImageService service = new CachingImageService(delegate);
+        BufferedImage frame = blocks(1);
+
+        assertTrue(service.imageContainsCat(frame, CONFIDENCE));
+        assertTrue(service.imageContainsCat(blocks(1), CONFIDENCE));
+
+        assertEquals(1, calls.get());
+        assertEquals(1, service.getHitCount());
+        assertEquals(1, service.getMissCount());
+    }
+
+    @Test
+    public void test_nearDuplicateFrame_withinDistance_hit() {
+        BufferedImage frame = blocks(1);
+        BufferedImage noisy = withBlock(blocks(1), 4, 3, 0xFFFFFF);
+        int distance = Long.bitCount(CachingImageService.differenceHash(frame) ^ CachingImageService.differenceHash(noisy));
+        assertTrue(distance > 0 && distance <= CachingImageService.DEFAULT_MAX_HAMMING_DISTANCE);
+
+        CachingImageService service = new CachingImageService(delegate);
+        service.imageContainsCat(frame, CONFIDENCE);
+        service.imageContainsCat(noisy, CONFIDENCE);
+
+        assertEquals(1, calls.get());
+        assertEquals(1, service.getHitCount());
+    }
+
+    @Test
+    public void test_nearDuplicateFrame_exactMatchOnly_miss() {
+        CachingImageService service = new CachingImageService(delegate,
+                CachingImageService.DEFAULT_MAX_ENTRIES, CachingImageService.DEFAULT_TTL_MILLIS, 0);
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        service.imageContainsCat(withBlock(blocks(1), 4, 3, 0xFFFFFF), CONFIDENCE);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, service.getHitCount());
+    }
+
+    @Test
+    public void test_differentScene_miss() {
+        CachingImageService service = new CachingImageService(delegate);
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        service.imageContainsCat(blocks(2), CONFIDENCE);
+
+        assertEquals(2, calls.get());
+        assertEquals(2, service.getMissCount());
+        assertEquals(2, service.getSize());
+    }
+
+    @Test
+    public void test_differentThreshold_verdictsCachedSeparately() {
+        CachingImageService service = new CachingImageService(delegate);
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        service.imageContainsCat(blocks(1), 90.0f);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void test_expiredEntry_analyzedAgain() {
+        CachingImageService service = new CachingImageService(delegate,
+                CachingImageService.DEFAULT_MAX_ENTRIES, 0, CachingImageService.DEFAULT_MAX_HAMMING_DISTANCE);
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+
+        assertEquals(2, calls.get());
+        assertEquals(1, service.getEvictionCount());
+    }
+
+    @Test
+    public void test_fullCache_leastRecentlyUsedEvicted() {
+        CachingImageService service = new CachingImageService(delegate, 2,
+                CachingImageService.DEFAULT_TTL_MILLIS, 0);
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        service.imageContainsCat(blocks(2), CONFIDENCE);
+        //touch the first frame so the second is the least recently used
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        service.imageContainsCat(blocks(3), CONFIDENCE);
+
+        assertEquals(2, service.getSize());
+        assertEquals(1, service.getEvictionCount());
+        service.imageContainsCat(blocks(1), CONFIDENCE);
+        assertEquals(3, calls.get());
+        service.imageContainsCat(blocks(2), CONFIDENCE);
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void test_scoringDelegate_classificationCachedForEveryThreshold() {
+        AtomicInteger classifications = new AtomicInteger();
+        ScoringImageService scoring = image -> {
+            classifications.incrementAndGet();
+            return ImageClassification.cat(70.0f);
+        };
+
+        CachingImageService service = CachingImageService.of(scoring);
+        assertTrue(service instanceof ScoringImageService);
+        ScoringImageService cached = (ScoringImageService) service;
+
+        assertEquals(70.0f, cached.classify(blocks(1)).getCatConfidence());
+        assertTrue(cached.imageContainsCat(blocks(1), CONFIDENCE));
+        assertFalse(cached.imageContainsCat(blocks(1), 90.0f));
+
+        assertEquals(1, classifications.get());
+        assertEquals(2, service.getHitCount());
+    }
+
+    @Test
+    public void test_plainDelegate_notScoring() {
+        assertFalse(CachingImageService.of(delegate) instanceof ScoringImageService);
+    }
+
+    /**
+     * @return An image of 9x8 flat blocks with brightness drawn from the given seed
+     */
+    private static BufferedImage blocks(long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(9 * BLOCK, 8 * BLOCK, BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 9; column++) {
+                int gray = random.nextInt(256);
+                withBlock(image, column, row, gray << 16 | gray << 8 | gray);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage withBlock(BufferedImage image, int column, int row, int rgb) {
+        for (int y = row * BLOCK; y < (row + 1) * BLOCK; y++) {
+            for (int x = column * BLOCK; x < (column + 1) * BLOCK; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,198 @@
+package com.udacity.catpoint.image.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the Rekognition DetectLabels API, speaking the AWS JSON 1.1 protocol over
+ * plain HTTP/1.1, so the AWS client can be tested without credentials or network access. Its
+ * latency and failures can be changed while it runs to imitate a degraded remote service.
+ * <p>
+ * Built on a plain ServerSocket, as the tests run inside the image module, which doesn't read
+ * jdk.httpserver.
+ */
+class DetectLabelsStubServer implements AutoCloseable {
+
+    private static final String DETECT_LABELS_TARGET = "RekognitionService.DetectLabels";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "detect-labels-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile boolean failing;
+    private volatile String label = "Cat";
+
+    DetectLabelsStubServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    /**
+     * @return The URL to configure as aws.endpoint
+     */
+    URI getEndpoint() {
+        return URI.create("http://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort());
+    }
+
+    /**
+     * @param attemptTimeoutMillis Timeout for each attempt, the call may take two attempts' time
+     * @return Settings pointing the AWS image services at this stub, without retries
+     */
+    Properties clientProperties(long attemptTimeoutMillis) {
+        Properties props = new Properties();
+        props.setProperty("aws.id", "test");
+        props.setProperty("aws.secret", "test");
+        props.setProperty("aws.region", "us-east-1");
+        props.setProperty("aws.endpoint", getEndpoint().toString());
+        props.setProperty("aws.attemptTimeoutMillis", Long.toString(attemptTimeoutMillis));
+        props.setProperty("aws.callTimeoutMillis", Long.toString(attemptTimeoutMillis * 2));
+        props.setProperty("aws.maxRetries", "0");
+        return props;
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param failing If true, every request fails with an InternalServerError
+     */
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * @param label The single label every image is given
+     */
+    void setLabel(String label) {
+        this.label = label;
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return The most requests the stub was working on at the same time
+     */
+    int getMaxActiveRequests() {
+        return maxActiveRequests.get();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                //closed
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers requests on one connection until the client closes it, as the AWS client keeps
+     * connections alive between calls.
+     */
+    private void serve(Socket socket) {
+        try (socket; InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = socket.getOutputStream()) {
+            while (readLine(in) != null) {
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+                if ("100-continue".equalsIgnoreCase(headers.get("expect"))) {
+                    out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                }
+                in.readNBytes(Integer.parseInt(headers.getOrDefault("content-length", "0")));
+                requestCount.incrementAndGet();
+                maxActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+                try {
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+                } finally {
+                    activeRequests.decrementAndGet();
+                }
+
+                String target = headers.get("x-amz-target");
+                if (!DETECT_LABELS_TARGET.equals(target)) {
+                    respond(out, 400, "Bad Request",
+                            "{\"__type\":\"UnknownOperationException\",\"message\":\"Unsupported target " + target + "\"}");
+                } else if (failing) {
+                    respond(out, 500, "Internal Server Error",
+                            "{\"__type\":\"InternalServerError\",\"message\":\"Stub failure\"}");
+                } else {
+                    respond(out, 200, "OK", "{\"Labels\":[{\"Name\":\"" + label + "\",\"Confidence\":97.5,"
+                            + "\"Instances\":[],\"Parents\":[]}],\"LabelModelVersion\":\"3.0\"}");
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            //the client gave up on the request, or the stub was closed
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                return line.toString();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static void respond(OutputStream out, int status, String reason, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: application/x-amz-json-1.1\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Smoke tests of the bundled model. The fixtures are regions of the sample photos that the
+ * bundled model was not trained on: it only saw the left part of each photo, and the held-out cat
+ * is the second cat on the right of sample-cat.jpg.
+ */
+public class LocalImageServiceTest {
+
+    private static final float CONFIDENCE = 50.0f;
+
+    private final LocalImageService service = new LocalImageService();
+
+    @Test
+    public void test_heldOutCat_containsCat() throws IOException {
+        BufferedImage cat = fixture("held-out-cat.jpg");
+        assertTrue(service.imageContainsCat(cat, CONFIDENCE));
+        assertTrue(service.classify(cat).containsCat(CONFIDENCE));
+    }
+
+    @Test
+    public void test_heldOutNotCats_noCat() throws IOException {
+        for (String name : new String[]{"held-out-not-cat-bugs.jpg", "held-out-not-cat-cattle.jpg"}) {
+            BufferedImage notCat = fixture(name);
+            assertFalse(service.imageContainsCat(notCat, CONFIDENCE), name);
+            assertFalse(service.classify(notCat).containsCat(CONFIDENCE), name);
+        }
+    }
+
+    @Test
+    public void test_noImage_noCat() {
+        assertFalse(service.imageContainsCat(null, CONFIDENCE));
+        assertSame(ImageClassification.NONE, service.classify(null));
+    }
+
+    @Test
+    public void test_modelFile_scoresLikeBundledModel(@TempDir Path directory) throws IOException {
+        Path modelFile = directory.resolve("model.bin");
+        try (InputStream in = LocalImageService.class.getResourceAsStream("local-cat-model.bin")) {
+            Files.copy(in, modelFile);
+        }
+        BufferedImage cat = fixture("held-out-cat.jpg");
+        assertEquals(service.catConfidence(cat), new LocalImageService(modelFile).catConfidence(cat));
+    }
+
+    @Test
+    public void test_missingModelFile_throws(@TempDir Path directory) {
+        assertThrows(UncheckedIOException.class, () -> new LocalImageService(directory.resolve("missing.bin")));
+    }
+
+    private static BufferedImage fixture(String name) throws IOException {
+        try (InputStream in = LocalImageServiceTest.class.getResourceAsStream(name)) {
+            assertNotNull(in, name);
+            return ImageIO.read(in);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RekognitionImageEncoderTest {
+
+    private static final int MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+
+    private final RekognitionImageEncoder encoder = new RekognitionImageEncoder(64, RekognitionImageEncoder.DEFAULT_QUALITY);
+
+    @Test
+    public void test_attachedJpeg_forwardedUntouched() throws IOException {
+        byte[] jpeg = jpeg(solid(200, 100, Color.ORANGE));
+        BufferedImage decoded = JpegSource.attach(ImageIO.read(new ByteArrayInputStream(jpeg)), jpeg);
+
+        //forwarded as-is, even though it is larger than the maximum dimension
+        assertSame(jpeg, encoder.encode(decoded).asByteArrayUnsafe());
+    }
+
+    @Test
+    public void test_attachedJpegTooLarge_reEncoded() throws IOException {
+        byte[] oversized = new byte[MAX_IMAGE_BYTES + 1];
+        oversized[0] = (byte) 0xFF;
+        oversized[1] = (byte) 0xD8;
+        BufferedImage image = JpegSource.attach(solid(32, 16, Color.BLUE), oversized);
+        assertSame(oversized, JpegSource.bytesOf(image));
+
+        byte[] encoded = encoder.encode(image).asByteArrayUnsafe();
+        assertTrue(encoded.length < MAX_IMAGE_BYTES);
+        BufferedImage decoded = decode(encoded);
+        assertEquals(32, decoded.getWidth());
+        assertEquals(16, decoded.getHeight());
+    }
+
+    @Test
+    public void test_largeImage_downscaledToMaxDimension() throws IOException {
+        BufferedImage decoded = decode(encoder.encode(solid(256, 128, Color.GREEN)).asByteArrayUnsafe());
+        assertEquals(64, decoded.getWidth());
+        assertEquals(32, decoded.getHeight());
+    }
+
+    @Test
+    public void test_smallImage_keepsSize() throws IOException {
+        BufferedImage decoded = decode(encoder.encode(solid(48, 20, Color.GREEN)).asByteArrayUnsafe());
+        assertEquals(48, decoded.getWidth());
+        assertEquals(20, decoded.getHeight());
+    }
+
+    @Test
+    public void test_alphaImage_flattenedToOpaqueJpeg() throws IOException {
+        BufferedImage translucent = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = translucent.createGraphics();
+        g.setColor(new Color(255, 0, 0, 255));
+        g.fillRect(0, 0, 40, 30);
+        g.dispose();
+
+        BufferedImage decoded = decode(encoder.encode(translucent).asByteArrayUnsafe());
+        assertFalse(decoded.getColorModel().hasAlpha());
+        assertEquals(40, decoded.getWidth());
+        assertColor(Color.RED, decoded);
+    }
+
+    @Test
+    public void test_pooledBuffer_largeThenSmallImage_noLeftoverBytes() throws IOException {
+        RekognitionImageEncoder fullSize = new RekognitionImageEncoder(4096, RekognitionImageEncoder.DEFAULT_QUALITY);
+        Random random = new Random(1);
+        BufferedImage noisy = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 512; y++) {
+            for (int x = 0; x < 512; x++) {
+                noisy.setRGB(x, y, random.nextInt());
+            }
+        }
+        byte[] large = fullSize.encode(noisy).asByteArrayUnsafe();
+        byte[] small = fullSize.encode(solid(8, 8, Color.WHITE)).asByteArrayUnsafe();
+
+        //the reused buffer must not hand out the tail of the previous, larger image
+        assertTrue(small.length < large.length);
+        assertArrayEquals(jpegOf(fullSize, solid(8, 8, Color.WHITE)), small);
+        assertEquals(8, decode(small).getWidth());
+    }
+
+    @Test
+    public void test_concurrentEncode_eachCallerGetsItsOwnImage() throws Exception {
+        Color[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.WHITE, Color.BLACK, Color.YELLOW, Color.CYAN, Color.MAGENTA};
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Color color = colors[t];
+                //different sizes, so mixed-up buffers or writers show as the wrong dimensions as well
+                int width = 16 + t * 4;
+                Callable<Void> task = () -> {
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        BufferedImage decoded = decode(encoder.encode(solid(width, 16, color)).asByteArrayUnsafe());
+                        assertEquals(width, decoded.getWidth());
+                        assertColor(color, decoded);
+                    }
+                    return null;
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_notJpegBytes_notAttached() {
+        BufferedImage image = solid(8, 8, Color.RED);
+        assertSame(image, JpegSource.attach(image, new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+        assertNull(JpegSource.bytesOf(image));
+        assertNull(JpegSource.bytesOf(null));
+    }
+
+    private static byte[] jpegOf(RekognitionImageEncoder encoder, BufferedImage image) throws IOException {
+        return encoder.encode(image).asByteArray();
+    }
+
+    private static BufferedImage solid(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] jpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(image);
+        return image;
+    }
+
+    /**
+     * Compares the center pixel, allowing for JPEG's lossy color conversion.
+     */
+    private static void assertColor(Color expected, BufferedImage image) {
+        Color actual = new Color(image.getRGB(image.getWidth() / 2, image.getHeight() / 2));
+        assertTrue(Math.abs(expected.getRed() - actual.getRed()) < 16
+                        && Math.abs(expected.getGreen() - actual.getGreen()) < 16
+                        && Math.abs(expected.getBlue() - actual.getBlue()) < 16,
+                "expected " + expected + " but was " + actual);
+    }
+}
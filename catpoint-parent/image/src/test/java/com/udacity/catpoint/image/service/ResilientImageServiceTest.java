@@ -0,0 +1,205 @@
+package com.udacity.catpoint.image.service;
+
+import com.udacity.catpoint.image.service.ResilientImageService.CircuitState;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResilientImageServiceTest {
+
+    private static final float CONFIDENCE = 50.0f;
+
+    private final BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+    // the fallback always sees a cat, the remote services in these tests never do
+    private final ImageService fallback = (image, confidence) -> true;
+
+    @Test
+    public void test_remoteFailing_circuitOpens_fallbackAnswers() {
+        AtomicInteger remoteCalls = new AtomicInteger();
+        ImageService remote = (image, confidence) -> {
+            remoteCalls.incrementAndGet();
+            throw new IllegalStateException("Remote is down");
+        };
+        try (ResilientImageService service = new ResilientImageService(remote, fallback, 1000, 3, 60_000, false)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(service.imageContainsCat(image, CONFIDENCE));
+            }
+            // the remote should only be asked until the circuit opens
+            assertEquals(3, remoteCalls.get());
+            assertEquals(CircuitState.OPEN, service.getCircuitState());
+            assertEquals(3, service.getFailureCount());
+            assertEquals(10, service.getFallbackCount());
+        }
+    }
+
+    @Test
+    public void test_circuitOpen_trialCallSucceeds_circuitCloses() throws InterruptedException {
+        AtomicBoolean down = new AtomicBoolean(true);
+        ImageService remote = (image, confidence) -> {
+            if (down.get()) {
+                throw new IllegalStateException("Remote is down");
+            }
+            return false;
+        };
+        try (ResilientImageService service = new ResilientImageService(remote, fallback, 1000, 1, 100, false)) {
+            assertTrue(service.imageContainsCat(image, CONFIDENCE));
+            assertEquals(CircuitState.OPEN, service.getCircuitState());
+
+            down.set(false);
+            Thread.sleep(150);
+            assertEquals(CircuitState.HALF_OPEN, service.getCircuitState());
+            // the trial call reaches the recovered remote, which closes the circuit
+            assertFalse(service.imageContainsCat(image, CONFIDENCE));
+            assertEquals(CircuitState.CLOSED, service.getCircuitState());
+        }
+    }
+
+    @Test
+    public void test_remoteHangs_callTimedOut_fallbackAnswers() {
+        ImageService remote = (image, confidence) -> {
+            sleep(10_000);
+            return false;
+        };
+        try (ResilientImageService service = new ResilientImageService(remote, fallback, 100, 3, 60_000, false)) {
+            long start = System.nanoTime();
+            assertTrue(service.imageContainsCat(image, CONFIDENCE));
+            assertTrue(millisSince(start) < 2000);
+            assertEquals(1, service.getTimeoutCount());
+        }
+    }
+
+    @Test
+    public void test_remoteThrowsError_fallbackAnswersWithoutWaitingForTimeout() {
+        ImageService remote = (image, confidence) -> {
+            throw new AssertionError("Remote is broken");
+        };
+        try (ResilientImageService service = new ResilientImageService(remote, fallback, 5000, 3, 60_000, false)) {
+            long start = System.nanoTime();
+            assertTrue(service.imageContainsCat(image, CONFIDENCE));
+
+            // the error should fail the call right away, not after the call timeout
+            assertTrue(millisSince(start) < 2000);
+            assertEquals(1, service.getFailureCount());
+            assertEquals(0, service.getTimeoutCount());
+        }
+    }
+
+    @Test
+    public void test_timedOutAttempt_callerReusesImage_remoteSeesOriginalPixels() throws InterruptedException {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+        BufferedImage frame = JpegSource.attach(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), jpeg);
+        frame.setRGB(0, 0, 0x123456);
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicInteger seenPixel = new AtomicInteger();
+        AtomicReference<byte[]> seenJpeg = new AtomicReference<>();
+        CountDownLatch seen = new CountDownLatch(1);
+        ImageService remote = (image, confidence) -> {
+            // keeps reading the image after the call has timed out and the caller reused it
+            awaitUninterruptibly(released);
+            seenPixel.set(image.getRGB(0, 0) & 0xFFFFFF);
+            seenJpeg.set(JpegSource.bytesOf(image));
+            seen.countDown();
+            return false;
+        };
+        try (ResilientImageService service = new ResilientImageService(remote, fallback, 100, 3, 60_000, false)) {
+            assertTrue(service.imageContainsCat(frame, CONFIDENCE));
+
+            // the caller writes the next frame into the same buffer
+            frame.setRGB(0, 0, 0xFFFFFF);
+            released.countDown();
+
+            assertTrue(seen.await(5, TimeUnit.SECONDS));
+            assertEquals(0x123456, seenPixel.get());
+            assertArrayEquals(jpeg, seenJpeg.get());
+        }
+    }
+
+    @Test
+    public void test_slowAttempt_hedgedRequestAnswers() {
+        AtomicInteger remoteCalls = new AtomicInteger();
+        ImageService remote = (image, confidence) -> {
+            if (remoteCalls.incrementAndGet() == 41) {
+                sleep(10_000);
+            }
+            return false;
+        };
+        try (ResilientImageService service = new ResilientImageService(remote, fallback, 5000, 3, 60_000, true)) {
+            // fast calls teach the service the usual latency and earn hedges
+            for (int i = 0; i < 40; i++) {
+                assertFalse(service.imageContainsCat(image, CONFIDENCE));
+            }
+            long start = System.nanoTime();
+            assertFalse(service.imageContainsCat(image, CONFIDENCE));
+
+            // the second request should answer long before the stuck one or the call timeout
+            assertTrue(millisSince(start) < 2000);
+            assertEquals(1, service.getHedgeCount());
+            assertEquals(0, service.getFallbackCount());
+        }
+    }
+
+    @Test
+    public void test_awsServiceAgainstStub_labelsDecideVerdict() throws IOException {
+        try (DetectLabelsStubServer stub = new DetectLabelsStubServer()) {
+            AwsImageService aws = new AwsImageService(stub.clientProperties(2000));
+            assertTrue(aws.imageContainsCat(image, CONFIDENCE));
+            stub.setLabel("Dog");
+            assertFalse(aws.imageContainsCat(image, CONFIDENCE));
+        }
+    }
+
+    @Test
+    public void test_awsServiceDegraded_latencyBounded_circuitOpens() throws IOException {
+        try (DetectLabelsStubServer stub = new DetectLabelsStubServer();
+             ResilientImageService service = new ResilientImageService(new AwsImageService(stub.clientProperties(200)),
+                     fallback, 1000, 3, 60_000, false)) {
+            stub.setLatencyMillis(5000);
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                assertTrue(service.imageContainsCat(image, CONFIDENCE));
+                assertTrue(millisSince(start) < 2000);
+            }
+            // once the circuit is open the degraded remote gets no more requests
+            assertEquals(CircuitState.OPEN, service.getCircuitState());
+            assertTrue(stub.getRequestCount() <= 3);
+        }
+    }
+
+    /**
+     * Waits through the interrupt a timed-out attempt gets when its call gives up on it.
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted", e);
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,164 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.image.service.JpegSource;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads a camera image from a file in the background and hands it to the event dispatch thread
+ * once it is ready, so large photos never freeze the window.
+ * <p>
+ * Large images are subsampled while they are decoded, keeping just enough pixels for image
+ * analysis, and the display copy is scaled down by repeated bilinear halving into an image
+ * compatible with the screen, which is much faster than Image.SCALE_SMOOTH and draws without
+ * any conversion.
+ */
+public class CameraImageLoader extends SwingWorker<CameraImageLoader.LoadedImage, Void> {
+
+    //decoded images keep at least this many pixels on their longest side, the most the analysis encoder sends
+    static final int ANALYSIS_MAX_DIMENSION = 1280;
+
+    private final File file;
+    private final int displayWidth;
+    private final int displayHeight;
+    private final GraphicsConfiguration graphicsConfiguration;
+    private final BiConsumer<LoadedImage, Exception> callback;
+
+    /**
+     * @param file Image file to load
+     * @param displayWidth Width of the display copy
+     * @param displayHeight Height of the display copy
+     * @param graphicsConfiguration Screen the display copy is drawn on, or null if not known yet
+     * @param callback Called on the event dispatch thread with the loaded image, or with the
+     *                 exception if it could not be loaded. Not called if the load is cancelled.
+     */
+    public CameraImageLoader(File file, int displayWidth, int displayHeight,
+                             GraphicsConfiguration graphicsConfiguration, BiConsumer<LoadedImage, Exception> callback) {
+        this.file = file;
+        this.displayWidth = displayWidth;
+        this.displayHeight = displayHeight;
+        this.graphicsConfiguration = graphicsConfiguration;
+        this.callback = callback;
+    }
+
+    /**
+     * A loaded camera image and its scaled copy for display.
+     */
+    public static class LoadedImage {
+        private final BufferedImage image;
+        private final BufferedImage displayImage;
+
+        LoadedImage(BufferedImage image, BufferedImage displayImage) {
+            this.image = image;
+            this.displayImage = displayImage;
+        }
+
+        /**
+         * @return The image to analyze, with the file's JPEG bytes attached if it was a JPEG
+         */
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public BufferedImage getDisplayImage() {
+            return displayImage;
+        }
+    }
+
+    @Override
+    protected LoadedImage doInBackground() throws IOException {
+        //keep the file bytes with the image so a JPEG can be sent for analysis without re-encoding
+        byte[] imageBytes = Files.readAllBytes(file.toPath());
+        BufferedImage image = JpegSource.attach(decode(imageBytes, ANALYSIS_MAX_DIMENSION), imageBytes);
+        if (isCancelled()) {
+            return null;
+        }
+        return new LoadedImage(image, scale(image, displayWidth, displayHeight, graphicsConfiguration));
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            callback.accept(get(), null);
+        } catch (ExecutionException e) {
+            callback.accept(null, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (InterruptedException | CancellationException e) {
+            //superseded by a newer load
+        }
+    }
+
+    /**
+     * Decodes an image, skipping rows and columns while decoding so that the longest side is no
+     * less than, and as close as possible to, the given size.
+     *
+     * @throws IOException If the bytes are not an image in a supported format
+     */
+    static BufferedImage decode(byte[] imageBytes, int maxDimension) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longestSide / maxDimension);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image to the given size, halving it with bilinear interpolation until it is within
+     * a factor of two of the target so that every source pixel still contributes to the result.
+     *
+     * @param graphicsConfiguration Screen the result is drawn on, or null for a plain RGB image
+     */
+    static BufferedImage scale(BufferedImage image, int width, int height, GraphicsConfiguration graphicsConfiguration) {
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        while (currentWidth / 2 >= width || currentHeight / 2 >= height) {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            current = draw(current, new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB));
+        }
+        BufferedImage target = graphicsConfiguration == null
+                ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                : graphicsConfiguration.createCompatibleImage(width, height);
+        return draw(current, target);
+    }
+
+    private static BufferedImage draw(BufferedImage source, BufferedImage target) {
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, target.getWidth(), target.getHeight(), null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
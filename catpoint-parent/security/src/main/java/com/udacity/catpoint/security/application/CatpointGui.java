@@ -1,8 +1,12 @@
 package com.udacity.catpoint.security.application;
 
 import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.ImageService;
 import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
 import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.metrics.CatpointMetrics;
+import com.udacity.catpoint.security.service.ImageAnalysisPipeline;
+import com.udacity.catpoint.security.service.MotionGate;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
@@ -16,14 +20,22 @@ import javax.swing.*;
  */
 public class CatpointGui extends JFrame {
     private SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
-    private FakeImageService imageService = new FakeImageService();
-    private SecurityService securityService = new SecurityService(securityRepository, imageService);
+    private ImageService imageService = new FakeImageService();
+    private SecurityService securityService = createSecurityService();
     private DisplayPanel displayPanel = new DisplayPanel(securityService);
     private ControlPanel controlPanel = new ControlPanel(securityService);
     private SensorPanel sensorPanel = new SensorPanel(securityService);
     private ImagePanel imagePanel = new ImagePanel(securityService);
 
     public CatpointGui() {
+        //analyze images off the event thread, but apply the verdicts back on it
+        securityService.configureImageAnalysis(ImageAnalysisPipeline.DEFAULT_WORKER_COUNT,
+                ImageAnalysisPipeline.DEFAULT_QUEUE_CAPACITY,
+                ImageAnalysisPipeline.BackPressurePolicy.COALESCE_LATEST,
+                SwingUtilities::invokeLater);
+        //don't pay for analysis of a camera image that hasn't changed
+        securityService.setMotionGateFactory(MotionGate::new);
+
         setLocation(100, 100);
         setSize(600, 850);
         setTitle("Very Secure App");
@@ -39,4 +51,16 @@ public class CatpointGui extends JFrame {
         getContentPane().add(mainPanel);
 
     }
+
+    /**
+     * Builds the SecurityService, instrumented and published over JMX if metrics are enabled.
+     */
+    private SecurityService createSecurityService() {
+        if (!CatpointMetrics.isEnabled()) {
+            return new SecurityService(securityRepository, imageService);
+        }
+        CatpointMetrics metrics = new CatpointMetrics();
+        metrics.register();
+        return metrics.instrument(securityRepository, "fake", imageService);
+    }
 }
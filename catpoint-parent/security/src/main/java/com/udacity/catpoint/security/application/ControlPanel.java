@@ -37,7 +37,7 @@ public class ControlPanel extends JPanel {
         buttonMap.forEach((k, v) -> {
             v.addActionListener(e -> {
                 securityService.setArmingStatus(k);
-                buttonMap.forEach((status, button) -> button.setBackground(status == k ? status.getColor() : null));
+                buttonMap.forEach((status, button) -> button.setBackground(status == k ? StatusColors.of(status) : null));
             });
         });
 
@@ -45,7 +45,7 @@ public class ControlPanel extends JPanel {
         Arrays.stream(ArmingStatus.values()).forEach(status -> add(buttonMap.get(status)));
 
         ArmingStatus currentStatus = securityService.getArmingStatus();
-        buttonMap.get(currentStatus).setBackground(currentStatus.getColor());
+        buttonMap.get(currentStatus).setBackground(StatusColors.of(currentStatus));
 
 
     }
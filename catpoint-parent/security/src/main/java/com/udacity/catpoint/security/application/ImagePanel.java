@@ -1,16 +1,25 @@
 package com.udacity.catpoint.security.application;
 
+import com.udacity.catpoint.security.service.CameraFeed;
+import com.udacity.catpoint.security.service.ReplayCameraSource;
 import com.udacity.catpoint.security.service.SecurityService;
 import com.udacity.catpoint.security.service.StyleService;
 import com.udacity.catpoint.security.data.AlarmStatus;
 import net.miginfocom.swing.MigLayout;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
  * by uploading their own picture, and 'scan' the picture, sending it for image analysis
@@ -21,6 +30,8 @@ public class ImagePanel extends JPanel implements StatusListener {
     private JLabel cameraHeader;
     private JLabel cameraLabel;
     private BufferedImage currentCameraImage;
+    private CameraImageLoader imageLoader;
+    private CameraFeed replayFeed;
 
     private int IMAGE_WIDTH = 300;
     private int IMAGE_HEIGHT = 225;
@@ -29,7 +40,7 @@ public class ImagePanel extends JPanel implements StatusListener {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        securityService.addStatusListener(this, SwingUtilities::invokeLater, true);
 
         cameraHeader = new JLabel("Camera Feed");
         cameraHeader.setFont(StyleService.HEADING_FONT);
@@ -49,26 +60,87 @@ public class ImagePanel extends JPanel implements StatusListener {
             if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
                 return;
             }
-            try {
-                currentCameraImage = ImageIO.read(chooser.getSelectedFile());
-                Image tmp = new ImageIcon(currentCameraImage).getImage();
-                cameraLabel.setIcon(new ImageIcon(tmp.getScaledInstance(IMAGE_WIDTH, IMAGE_HEIGHT, Image.SCALE_SMOOTH)));
-            } catch (IOException |NullPointerException ioe) {
-                JOptionPane.showMessageDialog(null, "Invalid image selected.");
-            }
-            repaint();
+            loadCameraImage(chooser.getSelectedFile());
         });
 
         //button that sends the image to the image com.udacity.image.service
         JButton scanPictureButton = new JButton("Scan Picture");
         scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
+            securityService.processImageAsync(currentCameraImage).whenComplete((cat, error) -> {
+                //frames dropped because a newer one was queued are not worth reporting
+                if (error != null && !(error instanceof CancellationException)) {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "Unable to scan picture."));
+                }
+            });
+        });
+
+        //button that streams the sample pictures to the securityService as a second camera
+        JToggleButton replayButton = new JToggleButton("Replay Samples");
+        replayButton.addActionListener(e -> {
+            if (replayButton.isSelected()) {
+                replayButton.setSelected(startReplay());
+            } else {
+                stopReplay();
+            }
         });
 
         add(cameraHeader, "span 3, wrap");
         add(cameraLabel, "span 3, wrap");
         add(addPictureButton);
         add(scanPictureButton);
+        add(replayButton);
+    }
+
+    /**
+     * Starts a camera feed replaying the sample pictures in the working directory.
+     * @return False if there are no samples to replay
+     */
+    private boolean startReplay() {
+        List<Path> samples = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("."), "sample*.jpg")) {
+            files.forEach(samples::add);
+            if (samples.isEmpty()) {
+                JOptionPane.showMessageDialog(null, "No sample pictures found.");
+                return false;
+            }
+            replayFeed = new CameraFeed(securityService,
+                    new ReplayCameraSource("replay", samples, Duration.ofSeconds(1))).start();
+            return true;
+        } catch (IOException ioe) {
+            JOptionPane.showMessageDialog(null, "Unable to read sample pictures.");
+            return false;
+        }
+    }
+
+    private void stopReplay() {
+        try {
+            replayFeed.close();
+        } catch (IOException ioe) {
+            //the replay only reads files it has already loaded
+        }
+        replayFeed = null;
+    }
+
+    /**
+     * Loads the image in the background and shows it once it is ready. Selecting another image
+     * before then cancels the earlier load.
+     * @param file The image file to load
+     */
+    private void loadCameraImage(File file) {
+        if (imageLoader != null) {
+            imageLoader.cancel(false);
+        }
+        imageLoader = new CameraImageLoader(file, IMAGE_WIDTH, IMAGE_HEIGHT, cameraLabel.getGraphicsConfiguration(),
+                (loaded, error) -> {
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(null, "Invalid image selected.");
+                        return;
+                    }
+                    currentCameraImage = loaded.getImage();
+                    cameraLabel.setIcon(new ImageIcon(loaded.getDisplayImage()));
+                    repaint();
+                });
+        imageLoader.execute();
     }
 
     @Override
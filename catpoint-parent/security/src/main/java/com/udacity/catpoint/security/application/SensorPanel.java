@@ -8,6 +8,10 @@ import com.udacity.catpoint.security.data.SensorType;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Panel that allows users to add sensors to their system. Sensors may be
@@ -23,7 +27,10 @@ public class SensorPanel extends JPanel implements StatusListener{
     private JTextField newSensorNameField = new JTextField();
     private JComboBox newSensorTypeDropdown = new JComboBox(SensorType.values());
     private JButton addNewSensorButton = new JButton("Add New Sensor");
+    private JButton removeSensorsButton = new JButton("Remove Selected Sensors");
 
+    private SensorTableModel sensorTableModel;
+    private JTable sensorTable;
     private JPanel sensorListPanel;
     private JPanel newSensorPanel;
 
@@ -31,7 +38,7 @@ public class SensorPanel extends JPanel implements StatusListener{
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        securityService.addStatusListener(this, SwingUtilities::invokeLater, true);
 
         panelLabel.setFont(StyleService.HEADING_FONT);
         addNewSensorButton.addActionListener(e ->
@@ -39,10 +46,11 @@ public class SensorPanel extends JPanel implements StatusListener{
                         SensorType.valueOf(newSensorTypeDropdown.getSelectedItem().toString()))));
 
         newSensorPanel = buildAddSensorPanel();
-        sensorListPanel = new JPanel();
-        sensorListPanel.setLayout(new MigLayout());
+        sensorTableModel = new SensorTableModel(securityService);
+        sensorTable = new JTable(sensorTableModel);
+        sensorListPanel = buildSensorListPanel();
 
-        updateSensorList(sensorListPanel);
+        sensorTableModel.refresh();
 
         add(panelLabel, "wrap");
         add(newSensorPanel, "span");
@@ -64,60 +72,47 @@ public class SensorPanel extends JPanel implements StatusListener{
     }
 
     /**
-     * Requests the current list of sensors and updates the provided panel to display them. Sensors
-     * will display in the order that they are created.
-     * @param p The Panel to populate with the current list of sensors
+     * Builds the scrollable sensor table. Only the visible rows are rendered, so the list stays
+     * responsive however many sensors there are.
      */
-    private void updateSensorList(JPanel p) {
-        p.removeAll();
-        securityService.getSensors().stream().sorted().forEach(s -> {
-            JLabel sensorLabel = new JLabel(String.format("%s(%s): %s", s.getName(),  s.getSensorType().toString(),(s.getActive() ? "Active" : "Inactive")));
-            JButton sensorToggleButton = new JButton((s.getActive() ? "Deactivate" : "Activate"));
-            JButton sensorRemoveButton = new JButton("Remove Sensor");
-
-            sensorToggleButton.addActionListener(e -> setSensorActivity(s, !s.getActive()) );
-            sensorRemoveButton.addActionListener(e -> removeSensor(s));
-
-            //hard code some sizes, tsk tsk
-            p.add(sensorLabel, "width 300:300:300");
-            p.add(sensorToggleButton, "width 100:100:100");
-            p.add(sensorRemoveButton, "wrap");
-        });
-
-        repaint();
-        revalidate();
-    }
+    private JPanel buildSensorListPanel() {
+        sensorTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        sensorTable.setFillsViewportHeight(true);
+        sensorTable.setPreferredScrollableViewportSize(new Dimension(500, 200));
+        sensorTable.getColumnModel().getColumn(SensorTableModel.NAME_COLUMN).setPreferredWidth(300);
+        sensorTable.getColumnModel().getColumn(SensorTableModel.TYPE_COLUMN).setPreferredWidth(100);
+        sensorTable.getColumnModel().getColumn(SensorTableModel.ACTIVE_COLUMN).setPreferredWidth(100);
 
-    /**
-     * Asks the securityService to change a sensor activation status and then rebuilds the current sensor list
-     * @param sensor The sensor to update
-     * @param isActive The sensor's activation status
-     */
-    private void setSensorActivity(Sensor sensor, Boolean isActive) {
-        securityService.changeSensorActivationStatus(sensor, isActive);
-        updateSensorList(sensorListPanel);
+        removeSensorsButton.addActionListener(e -> removeSelectedSensors());
+
+        JPanel p = new JPanel();
+        p.setLayout(new MigLayout());
+        p.add(new JScrollPane(sensorTable), "wrap");
+        p.add(removeSensorsButton);
+        return p;
     }
 
     /**
-     * Adds a sensor to the securityService and then rebuilds the sensor list
+     * Adds a sensor to the securityService and then updates the sensor table
      * @param sensor The sensor to add
      */
     private void addSensor(Sensor sensor) {
-        if(securityService.getSensors().size() < 4) {
-            securityService.addSensor(sensor);
-            updateSensorList(sensorListPanel);
-        } else {
-            JOptionPane.showMessageDialog(null, "To add more than 4 sensors, please subscribe to our Premium Membership!");
-        }
+        securityService.addSensor(sensor);
+        sensorTableModel.refresh();
     }
 
     /**
-     * Remove a sensor from the securityService and then rebuild the sensor list
-     * @param sensor The sensor to remove
+     * Removes the sensors selected in the table from the securityService in one batch, then updates
+     * the sensor table
      */
-    private void removeSensor(Sensor sensor) {
-        securityService.removeSensor(sensor);
-        updateSensorList(sensorListPanel);
+    private void removeSelectedSensors() {
+        List<Sensor> selected = Arrays.stream(sensorTable.getSelectedRows())
+                .mapToObj(sensorTableModel::getSensorAt)
+                .collect(Collectors.toList());
+        if (!selected.isEmpty()) {
+            securityService.removeSensors(selected);
+            sensorTableModel.refresh();
+        }
     }
 
     @Override
@@ -132,6 +127,6 @@ public class SensorPanel extends JPanel implements StatusListener{
 
     @Override
     public void sensorStatusChanged() {
-        updateSensorList(sensorListPanel);
+        sensorTableModel.refresh();
     }
 }
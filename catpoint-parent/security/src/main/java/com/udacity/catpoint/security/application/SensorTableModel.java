@@ -0,0 +1,150 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Table model for the sensor list. Rows are kept in display order, and refreshing the model only
+ * fires events for the rows that were actually inserted, removed or changed, so the table repaints
+ * just those rows instead of rebuilding the whole list.
+ */
+public class SensorTableModel extends AbstractTableModel {
+
+    static final int NAME_COLUMN = 0;
+    static final int TYPE_COLUMN = 1;
+    static final int ACTIVE_COLUMN = 2;
+
+    private static final String[] COLUMN_NAMES = {"Name", "Type", "Active"};
+
+    private final SecurityService securityService;
+    private final List<Sensor> rows = new ArrayList<>();
+    //activation status as last shown, sensors are updated in place so their own status can't tell us what changed
+    private final List<Boolean> shownActive = new ArrayList<>();
+
+    public SensorTableModel(SecurityService securityService) {
+        this.securityService = securityService;
+    }
+
+    /**
+     * Brings the rows up to date with the sensors in the securityService.
+     */
+    public void refresh() {
+        refresh(securityService.getSensors());
+    }
+
+    /**
+     * Merges the given sensors into the rows, firing an event for every row that differs.
+     * @param sensors The sensors to show
+     */
+    void refresh(Collection<Sensor> sensors) {
+        List<Sensor> latest = new ArrayList<>(sensors);
+        latest.sort(null);
+
+        int row = 0;
+        int next = 0;
+        while (next < latest.size()) {
+            Sensor sensor = latest.get(next);
+            if (row == rows.size()) {
+                rows.addAll(latest.subList(next, latest.size()));
+                latest.subList(next, latest.size()).forEach(s -> shownActive.add(isActive(s)));
+                fireTableRowsInserted(row, rows.size() - 1);
+                return;
+            }
+            Sensor shown = rows.get(row);
+            if (shown.equals(sensor)) {
+                if (shown != sensor || shownActive.get(row) != isActive(sensor)) {
+                    rows.set(row, sensor);
+                    shownActive.set(row, isActive(sensor));
+                    fireTableRowsUpdated(row, row);
+                }
+                row++;
+                next++;
+            } else if (shown.compareTo(sensor) < 0) {
+                rows.remove(row);
+                shownActive.remove(row);
+                fireTableRowsDeleted(row, row);
+            } else {
+                rows.add(row, sensor);
+                shownActive.add(row, isActive(sensor));
+                fireTableRowsInserted(row, row);
+                row++;
+                next++;
+            }
+        }
+        if (row < rows.size()) {
+            int last = rows.size() - 1;
+            rows.subList(row, rows.size()).clear();
+            shownActive.subList(row, shownActive.size()).clear();
+            fireTableRowsDeleted(row, last);
+        }
+    }
+
+    private static boolean isActive(Sensor sensor) {
+        return Boolean.TRUE.equals(sensor.getActive());
+    }
+
+    public Sensor getSensorAt(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+            case TYPE_COLUMN:
+                return SensorType.class;
+            case ACTIVE_COLUMN:
+                return Boolean.class;
+            default:
+                return String.class;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case NAME_COLUMN:
+                return rows.get(row).getName();
+            case TYPE_COLUMN:
+                return rows.get(row).getSensorType();
+            default:
+                return shownActive.get(row);
+        }
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == ACTIVE_COLUMN;
+    }
+
+    /**
+     * Ticking the active box changes the sensor's activation status in the securityService.
+     */
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (column == ACTIVE_COLUMN) {
+            securityService.changeSensorActivationStatus(rows.get(row), (Boolean) value);
+            refresh();
+        }
+    }
+}
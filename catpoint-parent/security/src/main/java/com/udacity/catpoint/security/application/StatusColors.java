@@ -0,0 +1,39 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+
+import java.awt.*;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Colors the UI uses to show each alarm and arming status. Kept out of the status enums so that the
+ * data layer doesn't depend on AWT.
+ */
+public final class StatusColors {
+
+    private static final Map<AlarmStatus, Color> ALARM_COLORS = new EnumMap<>(AlarmStatus.class);
+    private static final Map<ArmingStatus, Color> ARMING_COLORS = new EnumMap<>(ArmingStatus.class);
+
+    static {
+        ALARM_COLORS.put(AlarmStatus.NO_ALARM, new Color(120,200,30));
+        ALARM_COLORS.put(AlarmStatus.PENDING_ALARM, new Color(200,150,20));
+        ALARM_COLORS.put(AlarmStatus.ALARM, new Color(250,80,50));
+
+        ARMING_COLORS.put(ArmingStatus.DISARMED, new Color(120,200,30));
+        ARMING_COLORS.put(ArmingStatus.ARMED_HOME, new Color(190,180,50));
+        ARMING_COLORS.put(ArmingStatus.ARMED_AWAY, new Color(170,30,150));
+    }
+
+    private StatusColors() {
+    }
+
+    public static Color of(AlarmStatus alarmStatus) {
+        return ALARM_COLORS.get(alarmStatus);
+    }
+
+    public static Color of(ArmingStatus armingStatus) {
+        return ARMING_COLORS.get(armingStatus);
+    }
+}
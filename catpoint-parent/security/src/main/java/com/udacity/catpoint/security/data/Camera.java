@@ -0,0 +1,48 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.Objects;
+
+/**
+ * Camera POJO. Identifies one camera feed and how much of the image analysis budget it deserves.
+ */
+public class Camera {
+    private final String cameraId;
+    private final CameraLocation location;
+    private final int priority;
+
+    /**
+     * @param cameraId Unique identifier of the camera feed
+     * @param location Where the camera is mounted
+     * @param priority Relative share of image analysis for this camera, at least 1
+     */
+    public Camera(String cameraId, CameraLocation location, int priority) {
+        this.cameraId = Objects.requireNonNull(cameraId);
+        this.location = Objects.requireNonNull(location);
+        this.priority = Math.max(1, priority);
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public CameraLocation getLocation() {
+        return location;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Camera camera = (Camera) o;
+        return cameraId.equals(camera.cameraId);
+    }
+
+    @Override
+    public int hashCode() {
+        return cameraId.hashCode();
+    }
+}
@@ -0,0 +1,8 @@
+package com.udacity.catpoint.security.data;
+
+/**
+ * Where a camera is mounted. Used to decide which cameras matter most for each arming status.
+ */
+public enum CameraLocation {
+    INTERIOR, EXTERIOR
+}
@@ -0,0 +1,505 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository that keeps sensors in a memory-mapped file with one fixed-width record per sensor,
+ * so loading is a map call followed by a flat scan, and updating a sensor is an in-place write
+ * at a known offset.
+ * <p>
+ * Sensor names are variable length, so they are interned into a separate append-only names file
+ * and each record only stores the offset of its name. Records are kept dense: removing a sensor
+ * moves the last record into the freed slot.
+ * <p>
+ * Renamed and removed sensors leave their old names behind, so the names file is compacted on open
+ * once it holds more unreferenced bytes than live ones. Both files are rewritten to temporary files
+ * tagged with the next names generation and then renamed into place, sensors first; an interrupted
+ * compaction is finished or discarded on the next open.
+ * <p>
+ * Writes land in the page cache and are flushed by the OS; call {@link #sync()} to force them.
+ * Records are written before the count that makes them visible, and a removal that stopped
+ * halfway leaves a duplicate that the next open drops, so the files survive the process dying at
+ * any point. The OS may write the mapped pages back in any order though, so after a power loss
+ * only the state as of the last sync is safe.
+ */
+public class MappedSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    private static final String SENSORS_FILE = "sensors.dat";
+    private static final String NAMES_FILE = "names.dat";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x43415450; // "CATP"
+    private static final int VERSION = 2;
+
+    //header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int ALARM_OFFSET = 8;
+    private static final int ARMING_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    private static final int GENERATION_OFFSET = 20;
+    private static final int HEADER_BYTES = 32;
+
+    //the names file starts with the generation of the sensor file it belongs to
+    private static final int NAMES_HEADER_BYTES = Integer.BYTES;
+
+    //record layout: [id msb][id lsb][name offset][type ordinal][flags][padding]
+    private static final int ID_MSB_OFFSET = 0;
+    private static final int ID_LSB_OFFSET = 8;
+    private static final int NAME_OFFSET = 16;
+    private static final int TYPE_OFFSET = 20;
+    private static final int FLAGS_OFFSET = 21;
+    private static final int RECORD_BYTES = 24;
+
+    private static final byte ACTIVE_FLAG = 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Path directory;
+    private FileChannel sensorChannel;
+    private FileChannel namesChannel;
+    private MappedByteBuffer records;
+    private int capacity;
+    private int count;
+    private int generation;
+
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private final Map<String, Integer> nameOffsets = new HashMap<>();
+    private final Set<Sensor> sensors = new HashSet<>();
+    private long namesLength;
+    private volatile long bytesWritten;
+
+    private volatile AlarmStatus alarmStatus;
+    private volatile ArmingStatus armingStatus;
+
+    public MappedSecurityRepositoryImpl() {
+        this(Paths.get(System.getProperty("user.home"), ".catpoint"));
+    }
+
+    /**
+     * @param directory Directory holding the sensor and name files. Created if missing.
+     */
+    public MappedSecurityRepositoryImpl(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            recoverCompaction();
+            open();
+            if (namesLength - NAMES_HEADER_BYTES > 2 * liveNameBytes()) {
+                compactNames();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open sensor store in " + directory, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        if (slots.containsKey(sensor.getSensorId())) {
+            updateSensor(sensor);
+            return;
+        }
+        if (count == capacity) {
+            capacity = Math.max(capacity * 2, INITIAL_CAPACITY);
+            map();
+        }
+        //the record has to be in place before the count makes it visible to the next load, which
+        // only orders the writes against a process crash as the OS writes pages back in any order
+        int slot = count;
+        writeRecord(slot, sensor);
+        records.putInt(COUNT_OFFSET, ++count);
+        bytesWritten += Integer.BYTES;
+        slots.put(sensor.getSensorId(), slot);
+        sensors.add(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        Integer slot = slots.remove(sensor.getSensorId());
+        if (slot == null) {
+            return;
+        }
+        sensors.remove(sensor);
+        int last = --count;
+        if (slot != last) {
+            //keep the records dense by moving the last one into the freed slot, until the count
+            // shrinks below it the last record exists twice, see load()
+            moveRecord(last, slot);
+            slots.put(readId(slot), slot);
+            bytesWritten += RECORD_BYTES;
+        }
+        records.putInt(COUNT_OFFSET, count);
+        bytesWritten += Integer.BYTES;
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        Integer slot = slots.get(sensor.getSensorId());
+        if (slot == null) {
+            addSensor(sensor);
+            return;
+        }
+        sensors.remove(sensor);
+        sensors.add(sensor);
+        writeRecord(slot, sensor);
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        records.putInt(ALARM_OFFSET, alarmStatus.ordinal());
+        bytesWritten += Integer.BYTES;
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        records.putInt(ARMING_OFFSET, armingStatus.ordinal());
+        bytesWritten += Integer.BYTES;
+    }
+
+    /**
+     * @return Bytes written to the mapped records and the names file. Mapped pages are written
+     * back by the OS, so this counts changes rather than disk I/O.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return A snapshot of the sensors, as the live set is only safe to touch while holding the lock
+     */
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        return Set.copyOf(sensors);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Forces all record and name changes to disk.
+     */
+    public synchronized void sync() {
+        records.force();
+        try {
+            namesChannel.force(false);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to sync sensor names", ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        sensorChannel.close();
+        namesChannel.close();
+    }
+
+    private void writeRecord(int slot, Sensor sensor) {
+        int offset = recordOffset(slot);
+        records.putLong(offset + ID_MSB_OFFSET, sensor.getSensorId().getMostSignificantBits());
+        records.putLong(offset + ID_LSB_OFFSET, sensor.getSensorId().getLeastSignificantBits());
+        records.putInt(offset + NAME_OFFSET, intern(sensor.getName()));
+        records.put(offset + TYPE_OFFSET, (byte) sensor.getSensorType().ordinal());
+        records.put(offset + FLAGS_OFFSET, Boolean.TRUE.equals(sensor.getActive()) ? ACTIVE_FLAG : 0);
+        bytesWritten += RECORD_BYTES;
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    /**
+     * Returns the offset of the given name in the names file, appending it if it has not been
+     * stored before.
+     */
+    private int intern(String name) {
+        String key = name == null ? "" : name;
+        Integer offset = nameOffsets.get(key);
+        if (offset != null) {
+            return offset;
+        }
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Sensor name is too long to persist");
+        }
+        ByteBuffer entry = ByteBuffer.allocate(Short.BYTES + bytes.length);
+        entry.putShort((short) bytes.length).put(bytes).flip();
+        try {
+            long position = namesLength;
+            while (entry.hasRemaining()) {
+                position += namesChannel.write(entry, position);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to store sensor name", ioe);
+        }
+        int newOffset = (int) namesLength;
+        namesLength += entry.capacity();
+        bytesWritten += entry.capacity();
+        nameOffsets.put(key, newOffset);
+        return newOffset;
+    }
+
+    /**
+     * Opens and maps both files, initializing them if they are new, and loads their contents.
+     */
+    private void open() throws IOException {
+        sensorChannel = FileChannel.open(directory.resolve(SENSORS_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        namesChannel = FileChannel.open(directory.resolve(NAMES_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean fresh = sensorChannel.size() < HEADER_BYTES;
+        capacity = fresh ? INITIAL_CAPACITY : (int) ((sensorChannel.size() - HEADER_BYTES) / RECORD_BYTES);
+        map();
+        if (fresh) {
+            records.putInt(MAGIC_OFFSET, MAGIC);
+            records.putInt(VERSION_OFFSET, VERSION);
+            records.putInt(ALARM_OFFSET, AlarmStatus.NO_ALARM.ordinal());
+            records.putInt(ARMING_OFFSET, ArmingStatus.DISARMED.ordinal());
+            records.putInt(COUNT_OFFSET, 0);
+            records.putInt(GENERATION_OFFSET, 0);
+            namesChannel.truncate(0);
+            writeNamesHeader(namesChannel, 0);
+        } else if (records.getInt(MAGIC_OFFSET) != MAGIC || records.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IllegalStateException("Unrecognized sensor file in " + directory);
+        }
+        generation = records.getInt(GENERATION_OFFSET);
+        if (readNamesGeneration(namesChannel) != generation) {
+            throw new IllegalStateException("Sensor names in " + directory + " do not belong to its sensor file");
+        }
+        load();
+    }
+
+    private void map() {
+        try {
+            records = sensorChannel.map(FileChannel.MapMode.READ_WRITE, 0, recordOffset(capacity));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to map sensor store", ioe);
+        }
+    }
+
+    private void load() throws IOException {
+        alarmStatus = AlarmStatus.values()[records.getInt(ALARM_OFFSET)];
+        armingStatus = ArmingStatus.values()[records.getInt(ARMING_OFFSET)];
+        //records past the end of a truncated file are lost either way
+        count = Math.min(records.getInt(COUNT_OFFSET), capacity);
+
+        Map<Integer, String> names = new HashMap<>();
+        namesLength = namesChannel.size();
+        if (namesLength > NAMES_HEADER_BYTES) {
+            ByteBuffer in = namesChannel.map(FileChannel.MapMode.READ_ONLY, 0, namesLength);
+            in.position(NAMES_HEADER_BYTES);
+            int end = NAMES_HEADER_BYTES;
+            while (in.remaining() >= Short.BYTES) {
+                byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+                if (bytes.length > in.remaining()) {
+                    break;
+                }
+                in.get(bytes);
+                String name = new String(bytes, StandardCharsets.UTF_8);
+                names.put(end, name);
+                nameOffsets.put(name, end);
+                end = in.position();
+            }
+            //a partially written name at the end is overwritten by the next append
+            namesLength = end;
+        }
+
+        SensorType[] types = SensorType.values();
+        int storedCount = count;
+        for (int slot = 0; slot < count; slot++) {
+            UUID id = readId(slot);
+            while (slots.containsKey(id)) {
+                //a removal stopped after moving the last record into the freed slot, drop the copy
+                // left behind by filling its slot from the end again
+                int last = --count;
+                if (slot == last) {
+                    break;
+                }
+                moveRecord(last, slot);
+                id = readId(slot);
+            }
+            if (slot == count) {
+                break;
+            }
+            int offset = recordOffset(slot);
+            Sensor sensor = new Sensor();
+            sensor.setSensorId(id);
+            sensor.setName(names.get(records.getInt(offset + NAME_OFFSET)));
+            sensor.setSensorType(types[records.get(offset + TYPE_OFFSET)]);
+            sensor.setActive((records.get(offset + FLAGS_OFFSET) & ACTIVE_FLAG) != 0);
+            slots.put(sensor.getSensorId(), slot);
+            sensors.add(sensor);
+        }
+        if (count != storedCount) {
+            records.putInt(COUNT_OFFSET, count);
+        }
+    }
+
+    private UUID readId(int slot) {
+        int offset = recordOffset(slot);
+        return new UUID(records.getLong(offset + ID_MSB_OFFSET), records.getLong(offset + ID_LSB_OFFSET));
+    }
+
+    private void moveRecord(int fromSlot, int toSlot) {
+        int from = recordOffset(fromSlot);
+        int to = recordOffset(toSlot);
+        for (int i = 0; i < RECORD_BYTES; i += Long.BYTES) {
+            records.putLong(to + i, records.getLong(from + i));
+        }
+    }
+
+    /**
+     * @return Bytes the names file needs to hold just the names current records refer to
+     */
+    private long liveNameBytes() {
+        Set<String> live = new HashSet<>();
+        long bytes = 0;
+        for (Sensor sensor : sensors) {
+            String name = sensor.getName() == null ? "" : sensor.getName();
+            if (live.add(name)) {
+                bytes += Short.BYTES + name.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Rewrites the names file with only the names in use and the sensor file with the new name
+     * offsets, under the next generation, then reopens both.
+     */
+    private void compactNames() throws IOException {
+        int next = generation + 1;
+        Path namesTemp = directory.resolve(NAMES_FILE + TEMP_SUFFIX);
+        Path sensorsTemp = directory.resolve(SENSORS_FILE + TEMP_SUFFIX);
+
+        Map<String, Integer> compacted = new HashMap<>();
+        try (FileChannel out = FileChannel.open(namesTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeNamesHeader(out, next);
+            for (Sensor sensor : sensors) {
+                String name = sensor.getName() == null ? "" : sensor.getName();
+                if (!compacted.containsKey(name)) {
+                    compacted.put(name, (int) out.position());
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer entry = ByteBuffer.allocate(Short.BYTES + bytes.length);
+                    entry.putShort((short) bytes.length).put(bytes).flip();
+                    writeFully(out, entry);
+                }
+            }
+            out.force(true);
+        }
+
+        try (FileChannel out = FileChannel.open(sensorsTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer copy = records.duplicate();
+            copy.clear().limit(recordOffset(count));
+            ByteBuffer image = ByteBuffer.allocate(copy.limit()).put(copy);
+            image.putInt(GENERATION_OFFSET, next);
+            for (Sensor sensor : sensors) {
+                String name = sensor.getName() == null ? "" : sensor.getName();
+                image.putInt(recordOffset(slots.get(sensor.getSensorId())) + NAME_OFFSET, compacted.get(name));
+            }
+            image.flip();
+            writeFully(out, image);
+            out.force(true);
+        }
+
+        sensorChannel.close();
+        namesChannel.close();
+        //once the sensor file has moved, recoverCompaction() finishes the job if we stop here
+        Files.move(sensorsTemp, directory.resolve(SENSORS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(namesTemp, directory.resolve(NAMES_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        slots.clear();
+        nameOffsets.clear();
+        sensors.clear();
+        open();
+    }
+
+    /**
+     * Completes a compaction that stopped between moving the sensor file and the names file into
+     * place, and removes the temporary files of one that stopped earlier.
+     */
+    private void recoverCompaction() throws IOException {
+        Path sensorsFile = directory.resolve(SENSORS_FILE);
+        Path namesFile = directory.resolve(NAMES_FILE);
+        Path namesTemp = directory.resolve(NAMES_FILE + TEMP_SUFFIX);
+        if (Files.exists(sensorsFile) && Files.exists(namesFile) && Files.exists(namesTemp)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            int namesGeneration;
+            int tempGeneration;
+            try (FileChannel sensorsIn = FileChannel.open(sensorsFile, StandardOpenOption.READ);
+                 FileChannel namesIn = FileChannel.open(namesFile, StandardOpenOption.READ);
+                 FileChannel tempIn = FileChannel.open(namesTemp, StandardOpenOption.READ)) {
+                readFully(sensorsIn, header);
+                namesGeneration = readNamesGeneration(namesIn);
+                tempGeneration = readNamesGeneration(tempIn);
+            }
+            int sensorGeneration = header.hasRemaining() ? -1 : header.getInt(GENERATION_OFFSET);
+            if (sensorGeneration >= 0 && namesGeneration != sensorGeneration && tempGeneration == sensorGeneration) {
+                Files.move(namesTemp, namesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.deleteIfExists(namesTemp);
+        Files.deleteIfExists(directory.resolve(SENSORS_FILE + TEMP_SUFFIX));
+    }
+
+    private static void writeNamesHeader(FileChannel channel, int generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(NAMES_HEADER_BYTES);
+        header.putInt(generation).flip();
+        channel.position(0);
+        writeFully(channel, header);
+    }
+
+    /**
+     * @return The generation stored at the start of the names file, or -1 if it is too short to have one
+     */
+    private static int readNamesGeneration(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(NAMES_HEADER_BYTES);
+        readFully(channel, header);
+        return header.hasRemaining() ? -1 : header.getInt(0);
+    }
+
+    /**
+     * Reads from the start of the channel until the buffer is full or the channel is exhausted.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long position = 0;
+        int read;
+        while (buffer.hasRemaining() && (read = channel.read(buffer, position)) >= 0) {
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
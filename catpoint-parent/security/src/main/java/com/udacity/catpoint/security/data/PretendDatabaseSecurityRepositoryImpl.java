@@ -4,23 +4,42 @@ import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 
 import java.lang.reflect.Type;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.prefs.Preferences;
 
 /**
  * Fake repository implementation for demo purposes. Stores state information in local
  * memory and writes it to user preferences between app loads. This implementation is
  * intentionally a little hard to use in unit tests, so watch out!
+ * <p>
+ * Sensors are indexed by id, so updating a sensor replaces it even if its name changed. The
+ * name-sorted set handed out for display is only rebuilt when it is read after a change.
+ * <p>
+ * Sensor events are written from the sensor event loop's writer thread as well as the Swing
+ * thread, so every access to the sensors and the transaction state holds this repository's lock.
  */
 public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository {
 
-    private Set<Sensor> sensors;
-    private AlarmStatus alarmStatus;
-    private ArmingStatus armingStatus;
+    private final SensorIdIndex sensors = new SensorIdIndex();
+    //display order view, null whenever a change has made it stale
+    private SortedSensors sortedSensors;
+    private volatile AlarmStatus alarmStatus;
+    private volatile ArmingStatus armingStatus;
+
+    //unit of work state, changes are only written to prefs once the outermost transaction commits
+    private int transactionDepth;
+    private boolean sensorsChanged;
+    //counts one byte per character, the stored JSON is ASCII apart from sensor names
+    private volatile long bytesWritten;
 
     //preference keys
     private static final String SENSORS = "SENSORS";
+    //number of SENSORS values, as one preference value is limited to Preferences.MAX_VALUE_LENGTH
+    private static final String SENSOR_CHUNKS = "SENSOR_CHUNKS";
     private static final String ALARM_STATUS = "ALARM_STATUS";
     private static final String ARMING_STATUS = "ARMING_STATUS";
 
@@ -34,50 +53,145 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
         //we've serialized our sensor objects for storage, which should be a good warning sign that
         // this is likely an impractical solution for a real system
-        String sensorString = prefs.get(SENSORS, null);
-        if(sensorString == null) {
-            sensors = new TreeSet<>();
-        } else {
+        String sensorString = readSensorChunks();
+        if(sensorString != null) {
             Type type = new TypeToken<Set<Sensor>>() {
             }.getType();
-            sensors = gson.fromJson(sensorString, type);
+            Set<Sensor> saved = gson.fromJson(sensorString, type);
+            saved.forEach(sensors::put);
         }
     }
 
     @Override
-    public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+        saveSensors();
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor.getSensorId());
+        saveSensors();
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+        saveSensors();
+    }
+
+    @Override
+    public synchronized void addSensors(Collection<Sensor> sensors) {
+        sensors.forEach(this.sensors::put);
+        saveSensors();
     }
 
     @Override
-    public void removeSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void removeSensors(Collection<Sensor> sensors) {
+        sensors.forEach(sensor -> this.sensors.remove(sensor.getSensorId()));
+        saveSensors();
     }
 
     @Override
-    public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void updateSensors(Collection<Sensor> sensors) {
+        sensors.forEach(this.sensors::put);
+        saveSensors();
     }
 
     @Override
-    public void setAlarmStatus(AlarmStatus alarmStatus) {
+    public synchronized void beginTransaction() {
+        transactionDepth++;
+    }
+
+    @Override
+    public synchronized void commitTransaction() {
+        if (transactionDepth > 0 && --transactionDepth == 0 && sensorsChanged) {
+            saveSensors();
+        }
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
         this.alarmStatus = alarmStatus;
-        prefs.put(ALARM_STATUS, this.alarmStatus.toString());
+        put(ALARM_STATUS, this.alarmStatus.toString());
     }
 
     @Override
-    public void setArmingStatus(ArmingStatus armingStatus) {
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
         this.armingStatus = armingStatus;
-        prefs.put(ARMING_STATUS, this.armingStatus.toString());
+        put(ARMING_STATUS, this.armingStatus.toString());
+    }
+
+    /**
+     * Serializes the sensors to prefs, or defers it until the current transaction commits.
+     */
+    private void saveSensors() {
+        //names may have changed even when membership didn't, so any change invalidates the order
+        sortedSensors = null;
+        if (transactionDepth > 0) {
+            sensorsChanged = true;
+            return;
+        }
+        sensorsChanged = false;
+        writeSensorChunks(gson.toJson(sensors.toArray()));
+    }
+
+    /**
+     * Stores the serialized sensors under SENSORS, SENSORS1, SENSORS2... as many keys as it takes.
+     */
+    private void writeSensorChunks(String sensorString) {
+        int chunks = Math.max(1, (sensorString.length() + Preferences.MAX_VALUE_LENGTH - 1) / Preferences.MAX_VALUE_LENGTH);
+        for (int i = 0; i < chunks; i++) {
+            int start = i * Preferences.MAX_VALUE_LENGTH;
+            int end = Math.min(sensorString.length(), start + Preferences.MAX_VALUE_LENGTH);
+            put(chunkKey(i), sensorString.substring(start, end));
+        }
+        int oldChunks = prefs.getInt(SENSOR_CHUNKS, 1);
+        for (int i = chunks; i < oldChunks; i++) {
+            prefs.remove(chunkKey(i));
+        }
+        put(SENSOR_CHUNKS, Integer.toString(chunks));
+    }
+
+    private void put(String key, String value) {
+        prefs.put(key, value);
+        bytesWritten += value.length();
     }
 
     @Override
-    public Set<Sensor> getSensors() {
-        return sensors;
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private static String readSensorChunks() {
+        String first = prefs.get(SENSORS, null);
+        int chunks = prefs.getInt(SENSOR_CHUNKS, 1);
+        if (first == null || chunks == 1) {
+            return first;
+        }
+        StringBuilder sensorString = new StringBuilder(first);
+        for (int i = 1; i < chunks; i++) {
+            sensorString.append(prefs.get(chunkKey(i), ""));
+        }
+        return sensorString.toString();
+    }
+
+    private static String chunkKey(int chunk) {
+        return chunk == 0 ? SENSORS : SENSORS + chunk;
+    }
+
+    /**
+     * @return An unmodifiable view of the sensors sorted for display. The view is not updated by
+     * later changes, so read it again after changing the sensors.
+     */
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        if (sortedSensors == null) {
+            Sensor[] sorted = sensors.toArray();
+            Arrays.sort(sorted);
+            sortedSensors = new SortedSensors(sorted);
+        }
+        return sortedSensors;
     }
 
     @Override
@@ -89,4 +203,36 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
     public ArmingStatus getArmingStatus() {
         return armingStatus;
     }
+
+    /**
+     * Sensors in display order. Membership checks go through the id index for as long as the view
+     * is current.
+     */
+    private class SortedSensors extends AbstractSet<Sensor> {
+        private final Sensor[] sorted;
+
+        SortedSensors(Sensor[] sorted) {
+            this.sorted = sorted;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            synchronized (PretendDatabaseSecurityRepositoryImpl.this) {
+                if (sortedSensors != this) {
+                    return super.contains(o);
+                }
+                return o instanceof Sensor && sensors.indexOf(((Sensor) o).getSensorId()) >= 0;
+            }
+        }
+
+        @Override
+        public Iterator<Sensor> iterator() {
+            return Arrays.asList(sorted).iterator();
+        }
+
+        @Override
+        public int size() {
+            return sorted.length;
+        }
+    }
 }
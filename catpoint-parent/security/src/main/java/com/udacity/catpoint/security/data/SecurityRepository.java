@@ -1,5 +1,6 @@
 package com.udacity.catpoint.security.data;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -15,5 +16,61 @@ public interface SecurityRepository {
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
+    /**
+     * Adds all the provided sensors. Implementations should persist the batch in a single write.
+     */
+    default void addSensors(Collection<Sensor> sensors) {
+        beginTransaction();
+        try {
+            sensors.forEach(this::addSensor);
+        } finally {
+            commitTransaction();
+        }
+    }
 
+    /**
+     * Removes all the provided sensors. Implementations should persist the batch in a single write.
+     */
+    default void removeSensors(Collection<Sensor> sensors) {
+        beginTransaction();
+        try {
+            sensors.forEach(this::removeSensor);
+        } finally {
+            commitTransaction();
+        }
+    }
+
+    /**
+     * Updates all the provided sensors. Implementations should persist the batch in a single write.
+     */
+    default void updateSensors(Collection<Sensor> sensors) {
+        beginTransaction();
+        try {
+            sensors.forEach(this::updateSensor);
+        } finally {
+            commitTransaction();
+        }
+    }
+
+    /**
+     * Starts a unit of work. Changes made before the matching {@link #commitTransaction()} may be
+     * held back and persisted together. Units of work may be nested; only the outermost commit
+     * persists anything.
+     */
+    default void beginTransaction() {
+    }
+
+    /**
+     * Ends the unit of work started by the matching {@link #beginTransaction()}.
+     */
+    default void commitTransaction() {
+    }
+
+    /**
+     * @return Total number of bytes this repository has written to storage since it was created,
+     * or -1 if it doesn't keep count
+     */
+    default long getBytesWritten() {
+        return -1;
+    }
 }
@@ -3,16 +3,19 @@ package com.udacity.catpoint.security.data;
 
 import com.google.common.collect.ComparisonChain;
 
-import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Sensor POJO. Needs to know how to sort itself for display purposes.
  */
 public class Sensor implements Comparable<Sensor> {
+    private static final AtomicReferenceFieldUpdater<Sensor, Boolean> ACTIVE =
+            AtomicReferenceFieldUpdater.newUpdater(Sensor.class, Boolean.class, "active");
+
     private UUID sensorId;
     private String name;
-    private Boolean active;
+    private volatile Boolean active;
     private SensorType sensorType;
 
     public Sensor() {}
@@ -32,9 +35,12 @@ public class Sensor implements Comparable<Sensor> {
         return sensorId.equals(sensor.sensorId);
     }
 
+    /**
+     * Hashes the id directly, as Objects.hash would box it into a varargs array on every call.
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(sensorId);
+        return sensorId.hashCode();
     }
 
     public String getName() {
@@ -53,6 +59,16 @@ public class Sensor implements Comparable<Sensor> {
         this.active = active;
     }
 
+    /**
+     * Atomically sets the activation status, so concurrent updates of the same sensor each see the
+     * status they replaced.
+     *
+     * @return The previous activation status
+     */
+    public Boolean getAndSetActive(Boolean active) {
+        return ACTIVE.getAndSet(this, active);
+    }
+
     public SensorType getSensorType() {
         return sensorType;
     }
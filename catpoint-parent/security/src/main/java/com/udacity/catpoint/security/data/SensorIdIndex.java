@@ -0,0 +1,211 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.UUID;
+
+/**
+ * Open-addressing hash index of sensors keyed by the two halves of their UUID. Ids are stored in
+ * flat long arrays, so looking up a sensor by id neither boxes nor allocates, and a hit touches a
+ * couple of adjacent array slots instead of chasing map entry objects.
+ * <p>
+ * Collisions are resolved with linear probing, and removal shifts later entries back instead of
+ * leaving tombstones, so lookups never slow down as sensors come and go. Every slot also carries
+ * the timestamp of the last event applied to its sensor. Slot numbers are only valid until the
+ * next put or remove.
+ * <p>
+ * Not thread-safe.
+ */
+public final class SensorIdIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private Sensor[] sensors;
+    private long[] timestamps;
+    private int mask;
+    private int size;
+
+    public SensorIdIndex() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize Number of sensors the index should hold without resizing
+     */
+    public SensorIdIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return An independent copy of this index, including the event timestamps
+     */
+    public SensorIdIndex copy() {
+        SensorIdIndex copy = new SensorIdIndex(0);
+        copy.mostSignificantBits = mostSignificantBits.clone();
+        copy.leastSignificantBits = leastSignificantBits.clone();
+        copy.sensors = sensors.clone();
+        copy.timestamps = timestamps.clone();
+        copy.mask = mask;
+        copy.size = size;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The slot holding the sensor with the given id, or -1 if there is none
+     */
+    public int indexOf(long idMostSignificantBits, long idLeastSignificantBits) {
+        int slot = hash(idMostSignificantBits, idLeastSignificantBits) & mask;
+        while (sensors[slot] != null) {
+            if (mostSignificantBits[slot] == idMostSignificantBits && leastSignificantBits[slot] == idLeastSignificantBits) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int indexOf(UUID sensorId) {
+        return indexOf(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+    }
+
+    /**
+     * @return The sensor with the given id, or null if there is none
+     */
+    public Sensor get(UUID sensorId) {
+        int slot = indexOf(sensorId);
+        return slot < 0 ? null : sensors[slot];
+    }
+
+    public Sensor sensorAt(int slot) {
+        return sensors[slot];
+    }
+
+    public long timestampAt(int slot) {
+        return timestamps[slot];
+    }
+
+    public void setTimestampAt(int slot, long timestamp) {
+        timestamps[slot] = timestamp;
+    }
+
+    /**
+     * @return The indexed sensors, in no particular order
+     */
+    public Sensor[] toArray() {
+        Sensor[] result = new Sensor[size];
+        int n = 0;
+        for (Sensor sensor : sensors) {
+            if (sensor != null) {
+                result[n++] = sensor;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a sensor, replacing any sensor with the same id.
+     */
+    public void put(Sensor sensor) {
+        long msb = sensor.getSensorId().getMostSignificantBits();
+        long lsb = sensor.getSensorId().getLeastSignificantBits();
+        int slot = indexOf(msb, lsb);
+        if (slot >= 0) {
+            sensors[slot] = sensor;
+            return;
+        }
+        if ((size + 1) * 4 > sensors.length * 3) {
+            resize(sensors.length * 2);
+        }
+        insert(msb, lsb, sensor, Long.MIN_VALUE);
+        size++;
+    }
+
+    /**
+     * @return The removed sensor, or null if there was no sensor with the given id
+     */
+    public Sensor remove(UUID sensorId) {
+        int slot = indexOf(sensorId);
+        if (slot < 0) {
+            return null;
+        }
+        Sensor removed = sensors[slot];
+
+        //shift back any following entries that probed past the freed slot
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (sensors[next] != null) {
+            int home = hash(mostSignificantBits[next], leastSignificantBits[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                move(next, free);
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        sensors[free] = null;
+        size--;
+        return removed;
+    }
+
+    private void move(int from, int to) {
+        mostSignificantBits[to] = mostSignificantBits[from];
+        leastSignificantBits[to] = leastSignificantBits[from];
+        sensors[to] = sensors[from];
+        timestamps[to] = timestamps[from];
+    }
+
+    private void insert(long msb, long lsb, Sensor sensor, long timestamp) {
+        int slot = hash(msb, lsb) & mask;
+        while (sensors[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        mostSignificantBits[slot] = msb;
+        leastSignificantBits[slot] = lsb;
+        sensors[slot] = sensor;
+        timestamps[slot] = timestamp;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMsb = mostSignificantBits;
+        long[] oldLsb = leastSignificantBits;
+        Sensor[] oldSensors = sensors;
+        long[] oldTimestamps = timestamps;
+        allocate(capacity);
+        for (int i = 0; i < oldSensors.length; i++) {
+            if (oldSensors[i] != null) {
+                insert(oldMsb[i], oldLsb[i], oldSensors[i], oldTimestamps[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        sensors = new Sensor[capacity];
+        timestamps = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        //keep the load factor at or below 3/4
+        while (capacity * 3 < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Mixes both halves of the id, as random UUIDs carry fixed version and variant bits.
+     */
+    private static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,395 @@
+package com.udacity.catpoint.security.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Repository that persists every mutation as a small record appended to a local log file instead
+ * of re-serializing the whole system state. Appends go straight to the file, while the fsync is
+ * shared by all records written within the same group-commit interval.
+ * <p>
+ * Once the log has grown past the snapshot threshold (or past the number of sensors, whichever
+ * is larger) the full state is written to a snapshot file and the log is truncated, so the cost
+ * of persisting a single change stays O(1) amortized. On startup the snapshot is loaded and the
+ * log tail is replayed on top of it. Records are idempotent, so a crash between writing the
+ * snapshot and truncating the log only means some records get replayed twice.
+ */
+public class WriteAheadLogSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLogSecurityRepositoryImpl.class);
+
+    public static final long DEFAULT_GROUP_COMMIT_MILLIS = 50;
+    public static final int DEFAULT_SNAPSHOT_THRESHOLD = 1024;
+
+    private static final String LOG_FILE = "security.log";
+    private static final String SNAPSHOT_FILE = "security.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "security.snapshot.tmp";
+
+    //record types
+    private static final byte PUT_SENSOR = 1;
+    private static final byte REMOVE_SENSOR = 2;
+    private static final byte ALARM_STATUS = 3;
+    private static final byte ARMING_STATUS = 4;
+
+    //every record is framed as [payload length][crc32 of payload][payload]
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int MAX_PAYLOAD_BYTES = 1 + Long.BYTES * 2 + 2 + Short.BYTES + 0xFFFF;
+
+    private final Path directory;
+    private final int snapshotThreshold;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(HEADER_BYTES + MAX_PAYLOAD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService groupCommitter;
+
+    private final Set<Sensor> sensors = new HashSet<>();
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    private FileChannel log;
+    private int recordsSinceSnapshot;
+    private boolean unsynced;
+    private int transactionDepth;
+    //log and snapshot bytes
+    private volatile long bytesWritten;
+
+    public WriteAheadLogSecurityRepositoryImpl() {
+        this(Paths.get(System.getProperty("user.home"), ".catpoint"),
+                DEFAULT_GROUP_COMMIT_MILLIS, DEFAULT_SNAPSHOT_THRESHOLD);
+    }
+
+    /**
+     * @param directory Directory holding the log and snapshot files. Created if missing.
+     * @param groupCommitMillis Maximum time a record may sit in the OS page cache before being
+     *                          forced to disk. Zero forces the log after every record.
+     * @param snapshotThreshold Minimum number of log records to accumulate before compacting
+     *                          the log into a new snapshot.
+     */
+    public WriteAheadLogSecurityRepositoryImpl(Path directory, long groupCommitMillis, int snapshotThreshold) {
+        this.directory = directory;
+        this.snapshotThreshold = snapshotThreshold;
+        try {
+            Files.createDirectories(directory);
+            replay(directory.resolve(SNAPSHOT_FILE), false);
+            recordsSinceSnapshot = replay(directory.resolve(LOG_FILE), true);
+            log = FileChannel.open(directory.resolve(LOG_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open security log in " + directory, ioe);
+        }
+
+        if (groupCommitMillis > 0) {
+            groupCommitter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "security-log-group-commit");
+                t.setDaemon(true);
+                return t;
+            });
+            groupCommitter.scheduleWithFixedDelay(this::groupCommit, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+        } else {
+            groupCommitter = null;
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.add(sensor);
+        appendSensor(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+        beginRecord(REMOVE_SENSOR);
+        recordBuffer.putLong(sensor.getSensorId().getMostSignificantBits());
+        recordBuffer.putLong(sensor.getSensorId().getLeastSignificantBits());
+        endRecord();
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.remove(sensor);
+        sensors.add(sensor);
+        appendSensor(sensor);
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        beginRecord(ALARM_STATUS);
+        recordBuffer.put((byte) alarmStatus.ordinal());
+        endRecord();
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        beginRecord(ARMING_STATUS);
+        recordBuffer.put((byte) armingStatus.ordinal());
+        endRecord();
+    }
+
+    /**
+     * Records written inside a transaction are still appended one by one, but the sync and the
+     * snapshot check are deferred until the outermost transaction commits.
+     */
+    @Override
+    public synchronized void beginTransaction() {
+        transactionDepth++;
+    }
+
+    @Override
+    public synchronized void commitTransaction() {
+        if (transactionDepth > 0 && --transactionDepth == 0) {
+            afterAppend();
+        }
+    }
+
+    /**
+     * @return A snapshot of the sensors, as the live set is only safe to touch while holding the lock
+     */
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        return Set.copyOf(sensors);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Forces any records written since the last sync to disk. Called periodically by the
+     * group-commit thread, but may also be called directly when a change must be durable now.
+     */
+    public synchronized void sync() {
+        if (!unsynced) {
+            return;
+        }
+        try {
+            log.force(false);
+            unsynced = false;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to sync security log", ioe);
+        }
+    }
+
+    /**
+     * Runs on the group-commit thread. A failed sync is logged rather than thrown, as an exception
+     * escaping a periodic task would silently cancel every later group commit. The records stay
+     * marked unsynced, so the next run tries again.
+     */
+    private void groupCommit() {
+        try {
+            sync();
+        } catch (UncheckedIOException uioe) {
+            logger.error("Group commit of the security log failed", uioe);
+        }
+    }
+
+    /**
+     * Writes the complete current state to a fresh snapshot and truncates the log.
+     */
+    public synchronized void snapshot() {
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            beginRecord(ARMING_STATUS);
+            recordBuffer.put((byte) armingStatus.ordinal());
+            writeRecord(out);
+            beginRecord(ALARM_STATUS);
+            recordBuffer.put((byte) alarmStatus.ordinal());
+            writeRecord(out);
+            for (Sensor sensor : sensors) {
+                encodeSensor(sensor);
+                writeRecord(out);
+            }
+            out.force(true);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to write security snapshot", ioe);
+        }
+
+        try {
+            Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.truncate(0);
+            log.force(true);
+            recordsSinceSnapshot = 0;
+            unsynced = false;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to compact security log", ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (groupCommitter != null) {
+            groupCommitter.shutdown();
+        }
+        if (log.isOpen()) {
+            log.force(false);
+            log.close();
+        }
+    }
+
+    private void appendSensor(Sensor sensor) {
+        encodeSensor(sensor);
+        endRecord();
+    }
+
+    private void encodeSensor(Sensor sensor) {
+        beginRecord(PUT_SENSOR);
+        recordBuffer.putLong(sensor.getSensorId().getMostSignificantBits());
+        recordBuffer.putLong(sensor.getSensorId().getLeastSignificantBits());
+        recordBuffer.put((byte) sensor.getSensorType().ordinal());
+        recordBuffer.put((byte) (Boolean.TRUE.equals(sensor.getActive()) ? 1 : 0));
+        byte[] name = sensor.getName() == null ? new byte[0] : sensor.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Sensor name is too long to persist");
+        }
+        recordBuffer.putShort((short) name.length);
+        recordBuffer.put(name);
+    }
+
+    private void beginRecord(byte type) {
+        recordBuffer.clear();
+        recordBuffer.position(HEADER_BYTES);
+        recordBuffer.put(type);
+    }
+
+    /**
+     * Appends the record currently held in the buffer to the log, compacting the log if it has
+     * grown large enough.
+     */
+    private void endRecord() {
+        try {
+            writeRecord(log);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to append to security log", ioe);
+        }
+        unsynced = true;
+        recordsSinceSnapshot++;
+        if (transactionDepth == 0) {
+            afterAppend();
+        }
+    }
+
+    private void afterAppend() {
+        if (groupCommitter == null) {
+            sync();
+        }
+        if (recordsSinceSnapshot >= Math.max(snapshotThreshold, sensors.size())) {
+            snapshot();
+        }
+    }
+
+    private void writeRecord(FileChannel channel) throws IOException {
+        int payloadLength = recordBuffer.position() - HEADER_BYTES;
+        crc.reset();
+        crc.update(recordBuffer.array(), HEADER_BYTES, payloadLength);
+        recordBuffer.putInt(0, payloadLength);
+        recordBuffer.putInt(Integer.BYTES, (int) crc.getValue());
+        recordBuffer.flip();
+        while (recordBuffer.hasRemaining()) {
+            channel.write(recordBuffer);
+        }
+        bytesWritten += recordBuffer.limit();
+    }
+
+    /**
+     * Applies every intact record in the given file to the in-memory state.
+     *
+     * @param file The snapshot or log file to read
+     * @param truncateTornTail True to cut off a partially written record at the end of the file
+     * @return The number of records applied
+     */
+    private int replay(Path file, boolean truncateTornTail) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        int applied = 0;
+        int validLength = 0;
+        while (in.remaining() >= HEADER_BYTES) {
+            int payloadLength = in.getInt();
+            int checksum = in.getInt();
+            if (payloadLength <= 0 || payloadLength > in.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(in.array(), in.position(), payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer payload = in.slice();
+            payload.limit(payloadLength);
+            apply(payload);
+            in.position(in.position() + payloadLength);
+            validLength = in.position();
+            applied++;
+        }
+
+        if (truncateTornTail && validLength < in.capacity()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return applied;
+    }
+
+    private void apply(ByteBuffer payload) {
+        switch (payload.get()) {
+            case PUT_SENSOR:
+                Sensor sensor = new Sensor();
+                sensor.setSensorId(new UUID(payload.getLong(), payload.getLong()));
+                sensor.setSensorType(SensorType.values()[payload.get()]);
+                sensor.setActive(payload.get() != 0);
+                byte[] name = new byte[Short.toUnsignedInt(payload.getShort())];
+                payload.get(name);
+                sensor.setName(new String(name, StandardCharsets.UTF_8));
+                sensors.remove(sensor);
+                sensors.add(sensor);
+                break;
+            case REMOVE_SENSOR:
+                Sensor removed = new Sensor();
+                removed.setSensorId(new UUID(payload.getLong(), payload.getLong()));
+                sensors.remove(removed);
+                break;
+            case ALARM_STATUS:
+                alarmStatus = AlarmStatus.values()[payload.get()];
+                break;
+            case ARMING_STATUS:
+                armingStatus = ArmingStatus.values()[payload.get()];
+                break;
+            default:
+                throw new IllegalStateException("Unknown security log record type");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.service.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listens for alarm status changes to count the transitions between every pair of statuses and
+ * to time how long the system stays in PENDING_ALARM. Must receive every event, in order, without
+ * coalescing.
+ */
+class AlarmTransitionMetrics implements StatusListener {
+
+    private static final AlarmStatus[] STATUSES = AlarmStatus.values();
+
+    //transitions[from][to]
+    private final LongAdder[][] transitions = new LongAdder[STATUSES.length][STATUSES.length];
+    private final LatencyHistogram pendingAlarmDurations;
+    //guarded by this, the gauge reads the pending time from the metrics thread
+    private AlarmStatus current;
+    private boolean pending;
+    private long pendingSinceNanos;
+    private long pendingNanos;
+
+    /**
+     * @param current The alarm status when the listener is registered
+     */
+    AlarmTransitionMetrics(AlarmStatus current, CatpointMetrics metrics) {
+        for (AlarmStatus from : STATUSES) {
+            for (AlarmStatus to : STATUSES) {
+                if (from != to) {
+                    transitions[from.ordinal()][to.ordinal()] = metrics.counter("alarm.transitions." + from + "." + to);
+                }
+            }
+        }
+        this.pendingAlarmDurations = metrics.histogram("alarm.pendingAlarm");
+        this.current = current;
+        if (current == AlarmStatus.PENDING_ALARM) {
+            pendingSinceNanos = System.nanoTime();
+            pending = true;
+        }
+        metrics.gauge("alarm.pendingAlarmNanos", this::getPendingAlarmNanos);
+    }
+
+    @Override
+    public synchronized void notify(AlarmStatus status) {
+        if (status == current) {
+            //re-reported, e.g. the same alarm set twice
+            return;
+        }
+        long now = System.nanoTime();
+        transitions[current.ordinal()][status.ordinal()].increment();
+        if (current == AlarmStatus.PENDING_ALARM) {
+            long duration = now - pendingSinceNanos;
+            pending = false;
+            pendingNanos += duration;
+            pendingAlarmDurations.record(duration);
+        } else if (status == AlarmStatus.PENDING_ALARM) {
+            pendingSinceNanos = now;
+            pending = true;
+        }
+        current = status;
+    }
+
+    /**
+     * @return Total time spent in PENDING_ALARM, including the current stay if the alarm is pending
+     */
+    synchronized long getPendingAlarmNanos() {
+        return pending ? pendingNanos + System.nanoTime() - pendingSinceNanos : pendingNanos;
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+    }
+}
@@ -0,0 +1,130 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.image.service.AsyncImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.ScoringImageService;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.service.LatencyHistogram;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency histograms and counters recorded by the instrumented decorators of SecurityService,
+ * SecurityRepository, ImageService and StatusListener. Only wrapped components record anything,
+ * so a system built without them pays nothing for instrumentation.
+ * <p>
+ * Metrics are named with dotted paths, e.g. {@code imageService.aws} for the latency of the
+ * ImageService named "aws" and {@code imageService.aws.errors} for its failures. They can be read
+ * over JMX once {@link #register()} has been called, or from the status server's /metrics endpoint.
+ */
+public class CatpointMetrics implements CatpointMetricsMXBean {
+
+    /**
+     * System property that turns instrumentation on in the launchers, e.g. -Dcatpoint.metrics=true
+     */
+    public static final String ENABLED_PROPERTY = "catpoint.metrics";
+    public static final String OBJECT_NAME = "com.udacity.catpoint:type=Metrics";
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * @return True if the ENABLED_PROPERTY system property is set to true
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Wraps the repository and image service and builds a SecurityService on them, so that every
+     * part of the system records its metrics here.
+     *
+     * @param imageServiceName Name the image service's metrics are reported under
+     */
+    public SecurityService instrument(SecurityRepository securityRepository, String imageServiceName,
+                                      ImageService imageService) {
+        return new InstrumentedSecurityService(instrument(securityRepository),
+                instrument(imageServiceName, imageService), this);
+    }
+
+    public SecurityRepository instrument(SecurityRepository securityRepository) {
+        return new InstrumentedSecurityRepository(securityRepository, this);
+    }
+
+    /**
+     * @param name Name the image service's metrics are reported under
+     * @return The wrapped service, still a ScoringImageService or AsyncImageService if the given one was
+     */
+    public ImageService instrument(String name, ImageService imageService) {
+        if (imageService instanceof AsyncImageService) {
+            return new InstrumentedImageService.Async(name, (AsyncImageService) imageService, this);
+        }
+        if (imageService instanceof ScoringImageService) {
+            return new InstrumentedImageService.Scoring(name, (ScoringImageService) imageService, this);
+        }
+        return new InstrumentedImageService(name, imageService, this);
+    }
+
+    /**
+     * Publishes these metrics in the platform MBean server under {@link #OBJECT_NAME}.
+     *
+     * @throws IllegalStateException If metrics have already been registered
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register metrics as " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * @return The histogram with the given name, created empty on first use
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return The counter with the given name, created at zero on first use
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Reports a value kept elsewhere as a counter, read whenever the counters are read.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public Map<String, LatencySummary> getLatencies() {
+        Map<String, LatencySummary> latencies = new TreeMap<>();
+        histograms.forEach((name, histogram) -> latencies.put(name, LatencySummary.of(histogram)));
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    @Override
+    public void resetLatencies() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+}
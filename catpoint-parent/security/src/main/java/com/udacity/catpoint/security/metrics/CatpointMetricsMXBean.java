@@ -0,0 +1,24 @@
+package com.udacity.catpoint.security.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CatpointMetrics}, registered as {@value CatpointMetrics#OBJECT_NAME}.
+ */
+public interface CatpointMetricsMXBean {
+
+    /**
+     * @return A summary of every latency histogram, by metric name
+     */
+    Map<String, LatencySummary> getLatencies();
+
+    /**
+     * @return The value of every counter, by metric name
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Empties the latency histograms, e.g. after warming up. Counters are not reset.
+     */
+    void resetLatencies();
+}
@@ -0,0 +1,134 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.image.service.AsyncImageService;
+import com.udacity.catpoint.image.service.ImageClassification;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.ScoringImageService;
+import com.udacity.catpoint.security.service.LatencyHistogram;
+
+import java.awt.image.BufferedImage;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * ImageService decorator recording the latency of every call, and counting calls that fail and
+ * the subset of those that failed because the call timed out.
+ */
+class InstrumentedImageService implements ImageService {
+
+    private final ImageService delegate;
+    private final LatencyHistogram latency;
+    private final LongAdder errors;
+    private final LongAdder timeouts;
+
+    InstrumentedImageService(String name, ImageService delegate, CatpointMetrics metrics) {
+        this.delegate = delegate;
+        String prefix = "imageService." + name;
+        this.latency = metrics.histogram(prefix);
+        this.errors = metrics.counter(prefix + ".errors");
+        this.timeouts = metrics.counter(prefix + ".timeouts");
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshHold) {
+        long start = System.nanoTime();
+        try {
+            boolean cat = delegate.imageContainsCat(image, confidenceThreshHold);
+            record(start, null);
+            return cat;
+        } catch (RuntimeException e) {
+            record(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * @param error What the call failed with, or null if it succeeded
+     */
+    void record(long start, Throwable error) {
+        if (error != null) {
+            errors.increment();
+            if (isTimeout(error)) {
+                timeouts.increment();
+            }
+        }
+        latency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Recognizes timeouts by exception name as well as type, as client libraries have their own,
+     * e.g. the AWS SDK's ApiCallTimeoutException, and this module doesn't depend on them.
+     */
+    static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof InterruptedIOException
+                    || cause.getClass().getSimpleName().endsWith("TimeoutException")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps a ScoringImageService scoring, timing each classification.
+     */
+    static class Scoring extends InstrumentedImageService implements ScoringImageService {
+
+        private final ScoringImageService delegate;
+
+        Scoring(String name, ScoringImageService delegate, CatpointMetrics metrics) {
+            super(name, delegate, metrics);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ImageClassification classify(BufferedImage image) {
+            long start = System.nanoTime();
+            try {
+                ImageClassification classification = delegate.classify(image);
+                record(start, null);
+                return classification;
+            } catch (RuntimeException e) {
+                record(start, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Keeps an AsyncImageService asynchronous, timing each call until its future completes.
+     */
+    static class Async extends Scoring implements AsyncImageService {
+
+        private final AsyncImageService delegate;
+
+        Async(String name, AsyncImageService delegate, CatpointMetrics metrics) {
+            super(name, delegate, metrics);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<ImageClassification> classifyAsync(BufferedImage image) {
+            return timed(() -> delegate.classifyAsync(image));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshHold) {
+            return timed(() -> delegate.imageContainsCatAsync(image, confidenceThreshHold));
+        }
+
+        private <T> CompletableFuture<T> timed(Supplier<CompletableFuture<T>> call) {
+            long start = System.nanoTime();
+            CompletableFuture<T> result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            return result.whenComplete((value, error) -> record(start, error));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.service.LatencyHistogram;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SecurityRepository decorator recording the latency of every write, and reporting the bytes the
+ * wrapped repository has written. Writes made inside a transaction are not recorded on their
+ * own, as the wrapped repository may only buffer them; the outermost commit is timed instead.
+ */
+class InstrumentedSecurityRepository implements SecurityRepository {
+
+    private final SecurityRepository delegate;
+    private final LatencyHistogram writeLatency;
+    //open transactions, writes made while one is open are not timed
+    private final AtomicInteger transactionDepth = new AtomicInteger();
+
+    InstrumentedSecurityRepository(SecurityRepository delegate, CatpointMetrics metrics) {
+        this.delegate = delegate;
+        this.writeLatency = metrics.histogram("repository.write");
+        metrics.gauge("repository.bytesWritten", delegate::getBytesWritten);
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        write(() -> delegate.addSensor(sensor));
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        write(() -> delegate.removeSensor(sensor));
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        write(() -> delegate.updateSensor(sensor));
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        write(() -> delegate.setAlarmStatus(alarmStatus));
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        write(() -> delegate.setArmingStatus(armingStatus));
+    }
+
+    @Override
+    public void addSensors(Collection<Sensor> sensors) {
+        write(() -> delegate.addSensors(sensors));
+    }
+
+    @Override
+    public void removeSensors(Collection<Sensor> sensors) {
+        write(() -> delegate.removeSensors(sensors));
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> sensors) {
+        write(() -> delegate.updateSensors(sensors));
+    }
+
+    @Override
+    public void beginTransaction() {
+        transactionDepth.incrementAndGet();
+        delegate.beginTransaction();
+    }
+
+    @Override
+    public void commitTransaction() {
+        int depth = transactionDepth.getAndUpdate(d -> Math.max(0, d - 1));
+        if (depth != 1) {
+            //an inner commit, nothing is persisted until the outermost one
+            delegate.commitTransaction();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            delegate.commitTransaction();
+        } finally {
+            writeLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return delegate.getSensors();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return delegate.getAlarmStatus();
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return delegate.getArmingStatus();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return delegate.getBytesWritten();
+    }
+
+    /**
+     * Runs a write, timing it unless a transaction defers it to the commit.
+     */
+    private void write(Runnable write) {
+        if (transactionDepth.get() > 0) {
+            write.run();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            write.run();
+        } finally {
+            writeLatency.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.service.LatencyHistogram;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * SecurityService that records its image processing latency and alarm transitions, and wraps its
+ * status listeners to time how long each takes to handle an event. Created by
+ * {@link CatpointMetrics#instrument(SecurityRepository, String, ImageService)}.
+ */
+class InstrumentedSecurityService extends SecurityService {
+
+    private final CatpointMetrics metrics;
+    private final LatencyHistogram processImageLatency;
+    private final LatencyHistogram processImageAsyncLatency;
+    private final Map<StatusListener, InstrumentedStatusListener> listeners = new ConcurrentHashMap<>();
+
+    InstrumentedSecurityService(SecurityRepository securityRepository, ImageService imageService,
+                                CatpointMetrics metrics) {
+        super(securityRepository, imageService);
+        this.metrics = metrics;
+        this.processImageLatency = metrics.histogram("securityService.processImage");
+        this.processImageAsyncLatency = metrics.histogram("securityService.processImageAsync");
+        //called inline, so transitions are timed as they happen
+        super.addStatusListener(new AlarmTransitionMetrics(getAlarmStatus(), metrics), Runnable::run, false);
+    }
+
+    @Override
+    public void processImage(String cameraId, BufferedImage currentCameraImage) {
+        long start = System.nanoTime();
+        try {
+            super.processImage(cameraId, currentCameraImage);
+        } finally {
+            processImageLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the time from submitting the image until its verdict has been applied, including
+     * the time spent queued for analysis. Frames dropped by back-pressure are not recorded, and
+     * coalesced frames are recorded once the frame that replaced them has been analyzed.
+     */
+    @Override
+    public CompletableFuture<Boolean> processImageAsync(String cameraId, BufferedImage currentCameraImage) {
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> verdict = super.processImageAsync(cameraId, currentCameraImage);
+        verdict.whenComplete((cat, e) -> {
+            if (e == null) {
+                processImageAsyncLatency.record(System.nanoTime() - start);
+            }
+        });
+        return verdict;
+    }
+
+    @Override
+    public void addStatusListener(StatusListener statusListener, Executor executor, boolean coalesce) {
+        super.addStatusListener(listeners.computeIfAbsent(statusListener,
+                listener -> new InstrumentedStatusListener(listener, metrics)), executor, coalesce);
+    }
+
+    @Override
+    public void removeStatusListener(StatusListener statusListener) {
+        InstrumentedStatusListener instrumented = listeners.remove(statusListener);
+        if (instrumented != null) {
+            super.removeStatusListener(instrumented);
+        }
+    }
+}
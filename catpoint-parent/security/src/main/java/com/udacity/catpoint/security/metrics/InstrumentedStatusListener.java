@@ -0,0 +1,57 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.service.LatencyHistogram;
+
+/**
+ * StatusListener decorator recording how long the wrapped listener takes to handle each event.
+ */
+class InstrumentedStatusListener implements StatusListener {
+
+    private final StatusListener delegate;
+    private final LatencyHistogram dispatchLatency;
+
+    InstrumentedStatusListener(StatusListener delegate, CatpointMetrics metrics) {
+        this.delegate = delegate;
+        this.dispatchLatency = metrics.histogram("listener." + name(delegate));
+    }
+
+    /**
+     * @return The listener's class name, listeners of the same class share a histogram
+     */
+    private static String name(StatusListener listener) {
+        String name = listener.getClass().getSimpleName();
+        return name.isEmpty() ? listener.getClass().getName() : name;
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        long start = System.nanoTime();
+        try {
+            delegate.notify(status);
+        } finally {
+            dispatchLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        long start = System.nanoTime();
+        try {
+            delegate.catDetected(catDetected);
+        } finally {
+            dispatchLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        long start = System.nanoTime();
+        try {
+            delegate.sensorStatusChanged();
+        } finally {
+            dispatchLatency.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.udacity.catpoint.security.server;
+
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.metrics.CatpointMetrics;
+import com.udacity.catpoint.security.service.CameraFeed;
+import com.udacity.catpoint.security.service.DirectoryCameraSource;
+import com.udacity.catpoint.security.service.MotionGate;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Launches the security system without any user interface, for headless controllers. The Swing
+ * classes are never loaded and AWT runs in headless mode, so startup only pays for the service.
+ * <p>
+ * Usage: {@code CatpointServer [port] [camera directory]}. The system state is served as JSON on
+ * the loopback address, see {@link StatusHttpServer}. If a directory is given, images written to
+ * it are analyzed as they arrive.
+ * <p>
+ * With {@code -Dcatpoint.metrics=true} the service is instrumented, see {@link CatpointMetrics},
+ * and its metrics are published over JMX and on the /metrics endpoint.
+ * <p>
+ * {@code CatpointServer --train} runs through startup and a few alarm decisions once and exits.
+ * The runtime image launcher uses it to record the classes a start loads into an AppCDS archive.
+ */
+public class CatpointServer {
+
+    private static final Logger log = LoggerFactory.getLogger(CatpointServer.class);
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final String DIRECTORY_CAMERA_ID = "directory";
+    public static final String TRAIN_OPTION = "--train";
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length > 0 && TRAIN_OPTION.equals(args[0])) {
+            train();
+            System.exit(0);
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+        CatpointMetrics metrics = null;
+        if (CatpointMetrics.isEnabled()) {
+            metrics = new CatpointMetrics();
+            metrics.register();
+        }
+        SecurityService securityService = createSecurityService(metrics);
+        if (args.length > 1) {
+            new CameraFeed(securityService, new DirectoryCameraSource(DIRECTORY_CAMERA_ID, Paths.get(args[1]))).start();
+        }
+
+        StatusHttpServer server = new StatusHttpServer(securityService,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), metrics);
+        server.start();
+        log.info("Catpoint ready in {} ms, status available at http://{}:{}/status", millisSinceProcessStart(),
+                server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    /**
+     * @param metrics Metrics to instrument the service with, or null for none
+     */
+    private static SecurityService createSecurityService(CatpointMetrics metrics) {
+        SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
+        //camera frames repeat the same few scenes, only analyze each of them once in a while
+        ImageService imageService = CachingImageService.of(new FakeImageService());
+        SecurityService securityService = metrics == null
+                ? new SecurityService(securityRepository, imageService)
+                : metrics.instrument(securityRepository, "fake", imageService);
+        //don't pay for analysis of a camera image that hasn't changed
+        securityService.setMotionGateFactory(MotionGate::new);
+        return securityService;
+    }
+
+    /**
+     * Starts the service and takes it from disarmed to alarm and back, through the same code a
+     * controller runs after a restart. This changes the stored state, so it should be run with
+     * java.util.prefs.userRoot pointing at a throwaway directory. The service is instrumented, so
+     * that starts with metrics enabled benefit as well.
+     */
+    static void train() throws IOException {
+        CatpointMetrics metrics = new CatpointMetrics();
+        metrics.register();
+        SecurityService securityService = createSecurityService(metrics);
+        StatusHttpServer server = new StatusHttpServer(securityService,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), metrics);
+        server.start();
+        try {
+            Sensor sensor = new Sensor("Training Sensor", SensorType.DOOR);
+            securityService.addSensor(sensor);
+            securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+            securityService.changeSensorActivationStatus(sensor, true);
+
+            //decode a camera frame the way camera feeds do, then analyze it both ways
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+            BufferedImage frame = ImageIO.read(new ByteArrayInputStream(jpeg.toByteArray()));
+            securityService.processImage(frame);
+            securityService.processImageAsync(frame).join();
+
+            for (String path : new String[]{"/status", "/sensors", "/cameras", "/metrics"}) {
+                URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                try (InputStream in = connection.getInputStream()) {
+                    in.readAllBytes();
+                }
+            }
+
+            securityService.changeSensorActivationStatus(sensor, false);
+            securityService.setArmingStatus(ArmingStatus.DISARMED);
+            securityService.removeSensor(sensor);
+        } finally {
+            server.close();
+        }
+    }
+
+    private static long millisSinceProcessStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+}
@@ -0,0 +1,174 @@
+package com.udacity.catpoint.security.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.metrics.CatpointMetrics;
+import com.udacity.catpoint.security.metrics.LatencySummary;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SecurityState;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only HTTP/JSON view of the system for monitoring. Serves:
+ * <ul>
+ *     <li>{@code GET /status} - arming and alarm status, whether a cat is detected and the active sensor counts</li>
+ *     <li>{@code GET /sensors} - every sensor with its type and activation status</li>
+ *     <li>{@code GET /cameras} - every registered camera with its latest verdict and cat confidence</li>
+ *     <li>{@code GET /metrics} - latency summaries and counters, if the server was given {@link CatpointMetrics}</li>
+ * </ul>
+ * Everything is read from the SecurityService's snapshots, so requests never wait on a state change.
+ */
+public class StatusHttpServer implements AutoCloseable {
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final SecurityService securityService;
+    private final CatpointMetrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param securityService Service to report on
+     * @param address Address to listen on, usually the loopback address
+     * @throws IOException If the address can't be bound
+     */
+    public StatusHttpServer(SecurityService securityService, InetSocketAddress address) throws IOException {
+        this(securityService, address, null);
+    }
+
+    /**
+     * @param securityService Service to report on
+     * @param address Address to listen on, usually the loopback address
+     * @param metrics Metrics to serve on /metrics, or null to leave it out
+     * @throws IOException If the address can't be bound
+     */
+    public StatusHttpServer(SecurityService securityService, InetSocketAddress address, CatpointMetrics metrics)
+            throws IOException {
+        this.securityService = securityService;
+        this.metrics = metrics;
+        this.server = HttpServer.create(address, 0);
+        //monitoring traffic is light, two threads keep a slow client from blocking the others
+        this.executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "status-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/status", exchange -> respond(exchange, this::status));
+        server.createContext("/sensors", exchange -> respond(exchange, this::sensors));
+        server.createContext("/cameras", exchange -> respond(exchange, this::cameras));
+        if (metrics != null) {
+            server.createContext("/metrics", exchange -> respond(exchange, this::metrics));
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The address the server listens on, with the actual port if port 0 was requested
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private Map<String, Object> status() {
+        SecurityState state = securityService.getState();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("armingStatus", state.getArmingStatus().name());
+        status.put("alarmStatus", state.getAlarmStatus().name());
+        status.put("catDetected", state.isCatDetected());
+        status.put("activeSensorCount", state.getActiveSensorCount());
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (SensorType sensorType : SensorType.values()) {
+            counts.put(sensorType.name(), state.getActiveSensorCount(sensorType));
+        }
+        status.put("activeSensorCounts", counts);
+        return status;
+    }
+
+    private List<Map<String, Object>> sensors() {
+        return securityService.getSensorSnapshot().stream().sorted().map(sensor -> {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", sensor.getSensorId().toString());
+            json.put("name", sensor.getName());
+            json.put("type", sensor.getSensorType().name());
+            json.put("active", Boolean.TRUE.equals(sensor.getActive()));
+            return json;
+        }).collect(Collectors.toList());
+    }
+
+    private List<Map<String, Object>> cameras() {
+        return securityService.getCameras().stream().map(camera -> {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", camera.getCameraId());
+            json.put("location", camera.getLocation().name());
+            json.put("priority", camera.getPriority());
+            json.put("catDetected", securityService.isCatDetected(camera.getCameraId()));
+            json.put("catConfidence", securityService.getCatConfidence(camera.getCameraId()));
+            return json;
+        }).collect(Collectors.toList());
+    }
+
+    private Map<String, Object> metrics() {
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        metrics.getLatencies().forEach((name, summary) -> latencies.put(name, latency(summary)));
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("latencies", latencies);
+        json.put("counters", metrics.getCounters());
+        return json;
+    }
+
+    private static Map<String, Object> latency(LatencySummary summary) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("count", summary.getCount());
+        json.put("meanMicros", summary.getMeanMicros());
+        json.put("p50Micros", summary.getP50Micros());
+        json.put("p99Micros", summary.getP99Micros());
+        json.put("p999Micros", summary.getP999Micros());
+        json.put("maxMicros", summary.getMaxMicros());
+        return json;
+    }
+
+    private static void respond(HttpExchange exchange, Supplier<Object> body) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] json = gson.toJson(body.get()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.JpegSource;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams the frames of a {@link CameraSource} to the SecurityService for analysis on a background
+ * thread, so the alarm follows the camera without anyone sending images by hand.
+ * <p>
+ * The feed sends at most the configured number of frames per second and drops the rest. It also
+ * drops frames while all of its frame buffers are still waiting to be analyzed, so a camera that
+ * produces frames faster than they can be analyzed never builds up a backlog. Frames are decoded
+ * into a small pool of reused buffers; a buffer is handed back once its analysis has finished.
+ */
+public class CameraFeed implements AutoCloseable {
+
+    public static final double DEFAULT_FRAMES_PER_SECOND = 5;
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    private final SecurityService securityService;
+    private final CameraSource source;
+    private final long frameIntervalNanos;
+    private final FramePool framePool;
+    private final Thread thread;
+
+    //decoder of the last frame, reused as long as the format doesn't change
+    private ImageReader reader;
+    private long lastFrameNanos;
+    private boolean sentFrame;
+
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder failedFrames = new LongAdder();
+
+    public CameraFeed(SecurityService securityService, CameraSource source) {
+        this(securityService, source, DEFAULT_FRAMES_PER_SECOND, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param securityService Service the frames are sent to
+     * @param source Camera to read frames from
+     * @param framesPerSecond Maximum number of frames sent for analysis per second
+     * @param bufferCount Maximum number of frames waiting for analysis at once
+     */
+    public CameraFeed(SecurityService securityService, CameraSource source, double framesPerSecond, int bufferCount) {
+        if (framesPerSecond <= 0 || bufferCount < 1) {
+            throw new IllegalArgumentException("Frame rate and buffer count must be positive");
+        }
+        this.securityService = securityService;
+        this.source = source;
+        this.frameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+        this.framePool = new FramePool(bufferCount);
+        this.thread = new Thread(this::run, "camera-feed-" + source.getCameraId());
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts reading frames from the camera.
+     *
+     * @return This feed
+     */
+    public CameraFeed start() {
+        thread.start();
+        return this;
+    }
+
+    public long getSentFrameCount() {
+        return sentFrames.sum();
+    }
+
+    /**
+     * @return Number of frames skipped to keep to the frame rate or because every buffer was in use
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames.sum();
+    }
+
+    /**
+     * @return Number of frames that could not be decoded
+     */
+    public long getFailedFrameCount() {
+        return failedFrames.sum();
+    }
+
+    /**
+     * Closes the camera source and waits for the feed to stop. Frames already sent are still analyzed.
+     */
+    @Override
+    public void close() throws IOException {
+        source.close();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            byte[] encoded;
+            while ((encoded = source.nextFrame()) != null) {
+                long now = System.nanoTime();
+                if (sentFrame && now - lastFrameNanos < frameIntervalNanos) {
+                    droppedFrames.increment();
+                    continue;
+                }
+                BufferedImage buffer;
+                try {
+                    buffer = decode(encoded);
+                } catch (IOException | RuntimeException e) {
+                    failedFrames.increment();
+                    continue;
+                }
+                if (buffer == null) {
+                    droppedFrames.increment();
+                    continue;
+                }
+                sentFrame = true;
+                lastFrameNanos = now;
+                sentFrames.increment();
+                securityService.processImageAsync(source.getCameraId(), JpegSource.attach(buffer, encoded))
+                        .whenComplete((cat, error) -> framePool.release(buffer));
+            }
+        } catch (InterruptedException e) {
+            //closed
+        } catch (IOException e) {
+            //the camera went away, there is nothing more to read
+        } finally {
+            if (reader != null) {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes a frame into a pooled buffer.
+     *
+     * @return The buffer holding the frame, or null if every buffer is in use
+     */
+    private BufferedImage decode(byte[] encoded) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            ImageReader frameReader = readerFor(in);
+            frameReader.setInput(in, true, true);
+            ImageTypeSpecifier type = frameReader.getImageTypes(0).next();
+            BufferedImage buffer = framePool.acquire(frameReader.getWidth(0), frameReader.getHeight(0), type);
+            if (buffer == null) {
+                return null;
+            }
+            ImageReadParam param = frameReader.getDefaultReadParam();
+            param.setDestination(buffer);
+            try {
+                return frameReader.read(0, param);
+            } catch (IOException | RuntimeException e) {
+                framePool.release(buffer);
+                throw e;
+            }
+        }
+    }
+
+    private ImageReader readerFor(ImageInputStream in) throws IOException {
+        if (reader != null && reader.getOriginatingProvider().canDecodeInput(in)) {
+            return reader;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format from camera " + source.getCameraId());
+        }
+        if (reader != null) {
+            reader.dispose();
+        }
+        reader = readers.next();
+        return reader;
+    }
+}
@@ -0,0 +1,262 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageClassification;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Camera;
+import com.udacity.catpoint.security.data.CameraLocation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of every camera feeding the system and the latest verdict for each one, along with
+ * the classification it was based on so a new threshold can be applied without re-analyzing. The number
+ * of cameras currently seeing a cat is updated whenever a camera's verdict flips, so "does any
+ * camera see a cat" is answered without looking at every camera.
+ * <p>
+ * Images from a camera that was never registered are accepted; the camera is registered on the
+ * fly as an interior camera with the lowest priority when its image is submitted.
+ * <p>
+ * With frame voting configured, a camera's verdict is decided by its latest frames together
+ * rather than by the latest frame alone, see {@link VerdictWindow}.
+ */
+public class CameraRegistry {
+
+    public static final String DEFAULT_CAMERA_ID = "default";
+
+    /**
+     * Scheduling weight multiplier for exterior cameras while the system is armed away.
+     */
+    public static final int EXTERIOR_ARMED_AWAY_BOOST = 4;
+
+    private final ConcurrentMap<String, CameraState> cameras = new ConcurrentHashMap<>();
+    private final AtomicInteger camerasSeeingCat = new AtomicInteger();
+    private volatile Supplier<MotionGate> motionGateFactory;
+    private volatile FrameVoting frameVoting;
+
+    /**
+     * Adds a camera, or updates the location and priority of an already known camera.
+     */
+    public void register(Camera camera) {
+        cameras.compute(camera.getCameraId(), (id, state) -> {
+            if (state == null) {
+                return new CameraState(camera, newMotionGate());
+            }
+            state.camera = camera;
+            return state;
+        });
+    }
+
+    /**
+     * Removes a camera along with its verdict.
+     *
+     * @return True if the removed camera was seeing a cat
+     */
+    public boolean unregister(String cameraId) {
+        CameraState state = cameras.remove(cameraId);
+        if (state == null) {
+            return false;
+        }
+        //an update that looked the camera up before it was removed may still be on its way, and
+        // must not count a verdict once the camera is gone
+        synchronized (state) {
+            state.removed = true;
+            if (state.catDetected.getAndSet(false)) {
+                camerasSeeingCat.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public Collection<Camera> getCameras() {
+        return cameras.values().stream().map(state -> state.camera).collect(Collectors.toList());
+    }
+
+    public boolean isCatDetected(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        return state != null && state.catDetected.get();
+    }
+
+    /**
+     * @return True if at least one camera's latest verdict is a cat
+     */
+    public boolean anyCatDetected() {
+        return camerasSeeingCat.get() > 0;
+    }
+
+    /**
+     * Records the latest verdict for a camera, counting it if it flipped. Must be called while
+     * holding the camera's state.
+     */
+    private void updateVerdict(CameraState state, boolean cat) {
+        if (state.removed) {
+            return;
+        }
+        if (state.catDetected.getAndSet(cat) != cat) {
+            camerasSeeingCat.addAndGet(cat ? 1 : -1);
+        }
+    }
+
+    /**
+     * Records the latest classification for a camera and decides its verdict, from that
+     * classification alone or from the camera's voting window. A classification for a camera that
+     * is not registered, e.g. one unregistered while its image was analyzed, is dropped.
+     *
+     * @return The camera's verdict, or the classification's verdict if it was dropped
+     */
+    public boolean updateClassification(String cameraId, ImageClassification classification, float confidenceThreshold) {
+        CameraState state = cameras.get(cameraId);
+        if (state == null) {
+            return classification.containsCat(confidenceThreshold);
+        }
+        FrameVoting voting = frameVoting;
+        synchronized (state) {
+            if (state.removed) {
+                return classification.containsCat(confidenceThreshold);
+            }
+            state.classification = classification;
+            if (voting != null && state.window == null) {
+                state.window = voting.newWindow(state.catDetected.get());
+            }
+            boolean cat = state.window == null
+                    ? classification.containsCat(confidenceThreshold)
+                    : state.window.add(classification, confidenceThreshold);
+            updateVerdict(state, cat);
+            return cat;
+        }
+    }
+
+    /**
+     * Decides every camera's verdict again from its latest classification, or the classifications
+     * in its voting window.
+     */
+    public void applyThreshold(float confidenceThreshold) {
+        cameras.values().forEach(state -> {
+            synchronized (state) {
+                updateVerdict(state, state.window == null
+                        ? state.classification.containsCat(confidenceThreshold)
+                        : state.window.applyThreshold(confidenceThreshold));
+            }
+        });
+    }
+
+    /**
+     * Lets the latest frames of each camera vote on its verdict. Every camera starts a new window
+     * and keeps its current verdict until the votes change it.
+     *
+     * @param windowFrames Number of latest frames that vote
+     * @param catVotes Cat votes needed for a camera to start seeing a cat
+     * @param clearVotes Cat votes at or below which a camera stops seeing a cat, less than catVotes
+     */
+    public void setFrameVoting(int windowFrames, int catVotes, int clearVotes) {
+        if (windowFrames < 1 || catVotes < 1 || catVotes > windowFrames || clearVotes < 0 || clearVotes >= catVotes) {
+            throw new IllegalArgumentException("Invalid frame voting: " + catVotes + " of " + windowFrames
+                    + " frames to detect a cat, " + clearVotes + " to clear it");
+        }
+        FrameVoting voting = new FrameVoting(windowFrames, catVotes, clearVotes);
+        frameVoting = voting;
+        cameras.values().forEach(state -> {
+            synchronized (state) {
+                state.window = voting.newWindow(state.catDetected.get());
+            }
+        });
+    }
+
+    /**
+     * @return True if camera verdicts are decided by frame voting
+     */
+    public boolean isFrameVoting() {
+        return frameVoting != null;
+    }
+
+    /**
+     * @return The confidence that the camera's latest image contains a cat, 0 for an unknown camera
+     */
+    public float getCatConfidence(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        return state == null ? 0 : state.classification.getCatConfidence();
+    }
+
+    /**
+     * Share of the image analysis budget a camera should get for the given arming status. Exterior
+     * cameras matter most while nobody is home.
+     */
+    public int schedulingWeight(String cameraId, ArmingStatus armingStatus) {
+        CameraState state = cameras.get(cameraId);
+        if (state == null) {
+            return 1;
+        }
+        Camera camera = state.camera;
+        boolean boosted = armingStatus == ArmingStatus.ARMED_AWAY && camera.getLocation() == CameraLocation.EXTERIOR;
+        return camera.getPriority() * (boosted ? EXTERIOR_ARMED_AWAY_BOOST : 1);
+    }
+
+    /**
+     * Gives every camera, existing and future, its own motion gate from the factory.
+     *
+     * @param motionGateFactory Creates a gate per camera, or null to analyze every image
+     */
+    public void setMotionGateFactory(Supplier<MotionGate> motionGateFactory) {
+        this.motionGateFactory = motionGateFactory;
+        List<CameraState> states = List.copyOf(cameras.values());
+        states.forEach(state -> state.motionGate = newMotionGate());
+    }
+
+    CameraState state(String cameraId) {
+        return cameras.computeIfAbsent(cameraId,
+                id -> new CameraState(new Camera(id, CameraLocation.INTERIOR, 1), newMotionGate()));
+    }
+
+    private MotionGate newMotionGate() {
+        Supplier<MotionGate> factory = motionGateFactory;
+        return factory == null ? null : factory.get();
+    }
+
+    /**
+     * Mutable per-camera state used by the SecurityService.
+     */
+    static class CameraState {
+        private volatile Camera camera;
+        private final AtomicBoolean catDetected = new AtomicBoolean();
+        volatile MotionGate motionGate;
+        private volatile ImageClassification classification = ImageClassification.NONE;
+        //guarded by the state itself, null until frame voting is configured
+        private VerdictWindow window;
+        //guarded by the state itself, set once the camera is unregistered
+        private boolean removed;
+        CompletableFuture<Boolean> lastAnalysis = CompletableFuture.completedFuture(false);
+
+        private CameraState(Camera camera, MotionGate motionGate) {
+            this.camera = camera;
+            this.motionGate = motionGate;
+        }
+
+        boolean isCatDetected() {
+            return catDetected.get();
+        }
+    }
+
+    private static class FrameVoting {
+        private final int windowFrames;
+        private final int catVotes;
+        private final int clearVotes;
+
+        private FrameVoting(int windowFrames, int catVotes, int clearVotes) {
+            this.windowFrames = windowFrames;
+            this.catVotes = catVotes;
+            this.clearVotes = clearVotes;
+        }
+
+        private VerdictWindow newWindow(boolean catDetected) {
+            return new VerdictWindow(windowFrames, catVotes, clearVotes, catDetected);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.udacity.catpoint.security.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A camera that produces a continuous stream of encoded images. Frames are pulled one at a time by
+ * a {@link CameraFeed}, which decodes them and sends them to the SecurityService.
+ */
+public interface CameraSource extends Closeable {
+
+    /**
+     * @return Id of the camera the frames are reported for
+     */
+    String getCameraId();
+
+    /**
+     * Waits for the camera's next frame.
+     *
+     * @return The frame encoded in any format ImageIO can read, or null once the source has no
+     * more frames or has been closed
+     * @throws IOException If the camera could not be read
+     * @throws InterruptedException If interrupted while waiting for a frame
+     */
+    byte[] nextFrame() throws IOException, InterruptedException;
+
+    /**
+     * Stops the source. A thread waiting in {@link #nextFrame()} returns null.
+     */
+    @Override
+    void close() throws IOException;
+}
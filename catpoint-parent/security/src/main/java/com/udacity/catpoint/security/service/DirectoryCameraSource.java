@@ -0,0 +1,102 @@
+package com.udacity.catpoint.security.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * Camera that reports every image file written to a directory, e.g. by a camera uploading snapshots
+ * over FTP or a network share. Files are picked up through a WatchService as they are created or
+ * rewritten, and files already in the directory are ignored.
+ */
+public class DirectoryCameraSource implements CameraSource {
+
+    private final String cameraId;
+    private final Path directory;
+    private final WatchService watchService;
+    //files announced by the last watch key that haven't been returned yet
+    private final Queue<Path> pending = new ArrayDeque<>();
+
+    /**
+     * @param cameraId Id of the camera the images are reported for
+     * @param directory Directory the camera writes its images to
+     * @throws IOException If the directory can't be watched
+     */
+    public DirectoryCameraSource(String cameraId, Path directory) throws IOException {
+        this.cameraId = cameraId;
+        this.directory = directory;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    @Override
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    @Override
+    public byte[] nextFrame() throws IOException, InterruptedException {
+        while (true) {
+            Path file = pending.poll();
+            if (file == null) {
+                if (!awaitFiles()) {
+                    return null;
+                }
+                continue;
+            }
+            try {
+                byte[] frame = Files.readAllBytes(file);
+                //a file that is still empty will be announced again once it has been written
+                if (frame.length > 0) {
+                    return frame;
+                }
+            } catch (NoSuchFileException e) {
+                //removed again before we got to it
+            }
+        }
+    }
+
+    /**
+     * @return False if the source was closed while waiting
+     */
+    private boolean awaitFiles() throws InterruptedException {
+        WatchKey key;
+        try {
+            key = watchService.take();
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            //creating a file and writing it often arrive as separate events, read it once
+            if (isImage(file) && !pending.contains(file)) {
+                pending.add(file);
+            }
+        }
+        return key.reset();
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png")
+                || name.endsWith(".bmp") || name.endsWith(".gif");
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
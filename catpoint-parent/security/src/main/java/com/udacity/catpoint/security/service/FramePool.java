@@ -0,0 +1,53 @@
+package com.udacity.catpoint.security.service;
+
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Fixed number of image buffers that frames are decoded into, so a camera streaming at a steady
+ * resolution stops allocating pixel arrays once every buffer has been created. The number of
+ * buffers also caps how many frames of one camera can be in flight at once.
+ */
+class FramePool {
+
+    private final int capacity;
+    private final ArrayDeque<BufferedImage> free = new ArrayDeque<>();
+    private int allocated;
+
+    FramePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return A buffer of the given size and type, or null if every buffer is in use
+     */
+    synchronized BufferedImage acquire(int width, int height, ImageTypeSpecifier type) {
+        Iterator<BufferedImage> buffers = free.iterator();
+        while (buffers.hasNext()) {
+            BufferedImage buffer = buffers.next();
+            if (buffer.getWidth() == width && buffer.getHeight() == height
+                    && buffer.getColorModel().equals(type.getColorModel())
+                    && buffer.getSampleModel().getNumBands() == type.getSampleModel().getNumBands()) {
+                buffers.remove();
+                return buffer;
+            }
+        }
+        if (allocated < capacity) {
+            allocated++;
+        } else if (free.poll() == null) {
+            return null;
+        }
+        //either a buffer not created yet, or one replacing a free buffer of another resolution
+        return type.createBufferedImage(width, height);
+    }
+
+    synchronized void release(BufferedImage buffer) {
+        free.push(buffer);
+    }
+
+    synchronized int getAllocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,361 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.AsyncImageService;
+import com.udacity.catpoint.image.service.ImageClassification;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.ScoringImageService;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs image analysis on a small pool of worker threads, so callers such as the Swing event thread
+ * never wait on the image service. Every camera has its own bounded queue; when frames arrive
+ * faster than they can be analyzed, the back-pressure policy decides which frames are skipped and
+ * no queue ever grows past its capacity.
+ * <p>
+ * Workers share the analysis budget between cameras with stride scheduling: each camera with
+ * waiting frames is served in proportion to its weight, and a camera that was idle does not get
+ * to catch up on the turns it skipped.
+ * <p>
+ * An {@link AsyncImageService} is called without waiting for its answer, so a worker can keep
+ * several frames in flight, including several of the same camera, up to a fixed limit. Other
+ * services keep one frame in flight per worker.
+ * <p>
+ * A {@link ScoringImageService} classifies each frame, and the verdict handler decides what the
+ * scores mean. Other services answer for the current confidence threshold, and their verdict is
+ * handed over as a classification that is certain either way.
+ * <p>
+ * Each analyzed frame's classification is handed to the verdict handler at most once, on the
+ * verdict executor, before the frame's future completes with the handler's verdict. A
+ * classification arriving after the one for a later frame of the same camera is stale; its frame's
+ * future completes with the verdict for the threshold but the handler never sees it.
+ */
+public class ImageAnalysisPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_WORKER_COUNT = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    private static final long STRIDE_SCALE = 1L << 20;
+
+    /**
+     * What to do with a new frame when analysis cannot keep up.
+     */
+    public enum BackPressurePolicy {
+        /**
+         * Queue the new frame, dropping the oldest queued frame of the same camera if its queue
+         * is full. The dropped frame's future is cancelled.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace every queued frame of the same camera with the new one. Futures of the replaced
+         * frames complete with the verdict for the new frame.
+         */
+        COALESCE_LATEST
+    }
+
+    private final ImageService imageService;
+    private volatile float confidenceThreshold;
+    private final BiFunction<String, ImageClassification, Boolean> verdictHandler;
+    private final Executor verdictExecutor;
+    private final ToIntFunction<String> cameraWeight;
+    private final int queueCapacity;
+    private final BackPressurePolicy policy;
+    //one permit per frame being analyzed, workers wait for a permit before taking a frame
+    private final Semaphore inFlight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition framesAvailable = lock.newCondition();
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private long globalPass;
+    private int queuedFrames;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param imageService Service used to analyze each frame
+     * @param confidenceThreshold Threshold passed to image services that can't score images
+     * @param verdictHandler Receives the camera id and classification of every analyzed frame, and
+     *                       returns the frame's verdict
+     * @param verdictExecutor Executor the verdict handler runs on, e.g. the Swing event thread
+     * @param cameraWeight Relative share of the workers each camera should get, at least 1
+     * @param workerCount Number of frames that may be analyzed concurrently
+     * @param queueCapacity Maximum number of frames waiting for a worker, per camera
+     * @param policy What to do with new frames while a camera's queue is full
+     */
+    public ImageAnalysisPipeline(ImageService imageService, float confidenceThreshold,
+                                 BiFunction<String, ImageClassification, Boolean> verdictHandler,
+                                 Executor verdictExecutor,
+                                 ToIntFunction<String> cameraWeight,
+                                 int workerCount, int queueCapacity, BackPressurePolicy policy) {
+        this(imageService, confidenceThreshold, verdictHandler, verdictExecutor, cameraWeight,
+                workerCount, workerCount, queueCapacity, policy);
+    }
+
+    /**
+     * @param imageService Service used to analyze each frame
+     * @param confidenceThreshold Threshold passed to image services that can't score images
+     * @param verdictHandler Receives the camera id and classification of every analyzed frame, and
+     *                       returns the frame's verdict
+     * @param verdictExecutor Executor the verdict handler runs on, e.g. the Swing event thread
+     * @param cameraWeight Relative share of the workers each camera should get, at least 1
+     * @param workerCount Number of threads handing frames to the image service
+     * @param maxInFlight Number of frames that may be analyzed concurrently. Only an AsyncImageService
+     *                    can have more frames in flight than there are workers.
+     * @param queueCapacity Maximum number of frames waiting for a worker, per camera
+     * @param policy What to do with new frames while a camera's queue is full
+     */
+    public ImageAnalysisPipeline(ImageService imageService, float confidenceThreshold,
+                                 BiFunction<String, ImageClassification, Boolean> verdictHandler,
+                                 Executor verdictExecutor,
+                                 ToIntFunction<String> cameraWeight,
+                                 int workerCount, int maxInFlight, int queueCapacity, BackPressurePolicy policy) {
+        this.imageService = imageService;
+        this.confidenceThreshold = confidenceThreshold;
+        this.verdictHandler = verdictHandler;
+        this.verdictExecutor = verdictExecutor;
+        this.cameraWeight = cameraWeight;
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.inFlight = new Semaphore(maxInFlight);
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "image-analysis-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues an image from a camera for analysis.
+     *
+     * @param cameraId The camera that produced the image
+     * @param image The image to analyze
+     * @return A future completing with true if the image contains a cat. It is cancelled if the
+     * frame is dropped before being analyzed.
+     */
+    public CompletableFuture<Boolean> submit(String cameraId, BufferedImage image) {
+        Frame frame = new Frame(cameraId, image);
+        if (closed) {
+            frame.future.completeExceptionally(new IllegalStateException("Image analysis pipeline is closed"));
+            return frame.future;
+        }
+
+        List<Frame> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            Lane lane = lanes.computeIfAbsent(cameraId, id -> new Lane());
+            if (lane.frames.isEmpty()) {
+                //an idle camera rejoins at the current pass instead of catching up on skipped turns
+                lane.pass = Math.max(lane.pass, globalPass);
+            }
+            if (policy == BackPressurePolicy.COALESCE_LATEST) {
+                dropped.addAll(lane.frames);
+            } else if (lane.frames.size() >= queueCapacity) {
+                dropped.add(lane.frames.peekFirst());
+            }
+            dropped.forEach(lane.frames::remove);
+            frame.lane = lane;
+            frame.sequence = ++lane.lastSequence;
+            lane.frames.addLast(frame);
+            queuedFrames += 1 - dropped.size();
+            framesAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        for (Frame replaced : dropped) {
+            if (policy == BackPressurePolicy.COALESCE_LATEST) {
+                frame.future.whenComplete((cat, error) -> {
+                    if (error != null) {
+                        replaced.future.completeExceptionally(error);
+                    } else {
+                        replaced.future.complete(cat);
+                    }
+                });
+            } else {
+                replaced.future.cancel(false);
+            }
+        }
+        return frame.future;
+    }
+
+    /**
+     * Changes the threshold passed to image services that can't score images, for frames analyzed
+     * from now on.
+     */
+    public void setConfidenceThreshold(float confidenceThreshold) {
+        this.confidenceThreshold = confidenceThreshold;
+    }
+
+    /**
+     * Forgets a camera, cancelling the frames it still has waiting. Frames of the camera that are
+     * already being analyzed are delivered as usual.
+     */
+    public void removeCamera(String cameraId) {
+        Lane lane;
+        lock.lock();
+        try {
+            lane = lanes.remove(cameraId);
+            if (lane == null) {
+                return;
+            }
+            queuedFrames -= lane.frames.size();
+        } finally {
+            lock.unlock();
+        }
+        lane.frames.forEach(frame -> frame.future.cancel(false));
+    }
+
+    /**
+     * Stops the workers and cancels every frame still waiting in the queues.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+        List<Frame> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            lanes.values().forEach(lane -> pending.addAll(lane.frames));
+            lanes.clear();
+            queuedFrames = 0;
+        } finally {
+            lock.unlock();
+        }
+        pending.forEach(frame -> frame.future.cancel(false));
+    }
+
+    /**
+     * Waits for the next frame, picking the camera with the lowest pass among those with frames.
+     */
+    private Frame take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queuedFrames == 0) {
+                framesAvailable.await();
+            }
+            Lane next = null;
+            int waitingLanes = 0;
+            for (Lane lane : lanes.values()) {
+                if (!lane.frames.isEmpty()) {
+                    waitingLanes++;
+                    if (next == null || lane.pass < next.pass) {
+                        next = lane;
+                    }
+                }
+            }
+            Frame frame = next.frames.pollFirst();
+            queuedFrames--;
+            //weights only matter when cameras compete, so don't look them up otherwise
+            if (waitingLanes > 1) {
+                globalPass = next.pass;
+                next.pass += STRIDE_SCALE / Math.max(1, cameraWeight.applyAsInt(frame.cameraId));
+            }
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while (!closed) {
+            Frame frame;
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                frame = take();
+            } catch (InterruptedException e) {
+                inFlight.release();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (frame.future.isDone()) {
+                inFlight.release();
+                continue;
+            }
+            CompletableFuture<ImageClassification> classification;
+            try {
+                classification = classify(frame.image);
+            } catch (RuntimeException e) {
+                classification = CompletableFuture.failedFuture(e);
+            }
+            //only an AsyncImageService's classification can still be pending here
+            classification.whenComplete((result, error) -> {
+                inFlight.release();
+                deliver(frame, result, error);
+            });
+        }
+    }
+
+    private CompletableFuture<ImageClassification> classify(BufferedImage image) {
+        if (imageService instanceof AsyncImageService) {
+            return ((AsyncImageService) imageService).classifyAsync(image);
+        }
+        if (imageService instanceof ScoringImageService) {
+            return CompletableFuture.completedFuture(((ScoringImageService) imageService).classify(image));
+        }
+        return CompletableFuture.completedFuture(
+                ImageClassification.verdict(imageService.imageContainsCat(image, confidenceThreshold)));
+    }
+
+    private void deliver(Frame frame, ImageClassification classification, Throwable error) {
+        if (error != null) {
+            frame.future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            return;
+        }
+        verdictExecutor.execute(() -> {
+            try {
+                boolean cat;
+                if (frame.lane.appliedSequence.getAndAccumulate(frame.sequence, Math::max) < frame.sequence) {
+                    cat = verdictHandler.apply(frame.cameraId, classification);
+                } else {
+                    cat = classification.containsCat(confidenceThreshold);
+                }
+                frame.future.complete(cat);
+            } catch (RuntimeException e) {
+                frame.future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private static class Lane {
+        private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+        private long pass;
+        private long lastSequence;
+        //sequence of the latest frame whose verdict was handed to the verdict handler
+        private final AtomicLong appliedSequence = new AtomicLong();
+    }
+
+    private static class Frame {
+        private final String cameraId;
+        private final BufferedImage image;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        private Lane lane;
+        private long sequence;
+
+        private Frame(String cameraId, BufferedImage image) {
+            this.cameraId = cameraId;
+            this.image = image;
+        }
+    }
+}
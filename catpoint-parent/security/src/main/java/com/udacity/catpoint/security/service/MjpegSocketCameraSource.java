@@ -0,0 +1,195 @@
+package com.udacity.catpoint.security.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Camera that streams MJPEG over a socket, as served by local camera bridges. Both raw concatenated
+ * JPEGs and multipart streams are accepted: anything between two images, such as part boundaries and
+ * headers, is skipped.
+ * <p>
+ * Frames are delimited by walking the JPEG segment structure rather than searching for the
+ * end-of-image marker, so embedded EXIF thumbnails and progressive scans are read as part of their
+ * frame. The socket is read in large chunks into a buffer that is reused for every frame.
+ */
+public class MjpegSocketCameraSource implements CameraSource {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_FRAME_SIZE = 256 * 1024;
+
+    //JPEG markers
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int TEM = 0x01;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+
+    private final String cameraId;
+    private final Socket socket;
+    private final InputStream in;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int readPosition;
+    private int readLimit;
+    private byte[] frame = new byte[INITIAL_FRAME_SIZE];
+    private int frameLength;
+    private volatile boolean closed;
+
+    /**
+     * Connects to the stream.
+     *
+     * @param cameraId Id of the camera the images are reported for
+     * @param address Host and port serving the MJPEG stream
+     * @throws IOException If the connection fails
+     */
+    public MjpegSocketCameraSource(String cameraId, InetSocketAddress address) throws IOException {
+        this.cameraId = cameraId;
+        this.socket = new Socket();
+        socket.connect(address);
+        this.in = socket.getInputStream();
+    }
+
+    @Override
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    @Override
+    public byte[] nextFrame() throws IOException {
+        try {
+            readFrame();
+            return Arrays.copyOf(frame, frameLength);
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            if (closed) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void readFrame() throws IOException {
+        //skip to the start of the next image
+        int previous = read();
+        int current = read();
+        while (previous != 0xFF || current != SOI) {
+            previous = current;
+            current = read();
+        }
+        frameLength = 0;
+        appendMarker(SOI);
+
+        int marker = readMarker();
+        while (true) {
+            appendMarker(marker);
+            if (marker == EOI) {
+                return;
+            }
+            if (marker == TEM || (marker >= RST0 && marker <= RST7)) {
+                marker = readMarker();
+                continue;
+            }
+            int high = read();
+            int low = read();
+            append(high);
+            append(low);
+            copy(((high << 8) | low) - 2);
+            marker = marker == SOS ? copyScan() : readMarker();
+        }
+    }
+
+    /**
+     * Copies entropy coded data up to the next marker.
+     *
+     * @return The marker that ends the scan
+     */
+    private int copyScan() throws IOException {
+        while (true) {
+            int b = read();
+            if (b != 0xFF) {
+                append(b);
+                continue;
+            }
+            int marker = read();
+            while (marker == 0xFF) {
+                marker = read();
+            }
+            //stuffed zero bytes and restart markers are part of the scan
+            if (marker == 0x00 || (marker >= RST0 && marker <= RST7)) {
+                append(0xFF);
+                append(marker);
+                continue;
+            }
+            return marker;
+        }
+    }
+
+    private int readMarker() throws IOException {
+        if (read() != 0xFF) {
+            throw new IOException("Corrupt JPEG in MJPEG stream from camera " + cameraId);
+        }
+        int marker = read();
+        while (marker == 0xFF) {
+            marker = read();
+        }
+        return marker;
+    }
+
+    private void appendMarker(int marker) {
+        append(0xFF);
+        append(marker);
+    }
+
+    private void append(int b) {
+        if (frameLength == frame.length) {
+            frame = Arrays.copyOf(frame, frame.length * 2);
+        }
+        frame[frameLength++] = (byte) b;
+    }
+
+    private void copy(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Corrupt JPEG in MJPEG stream from camera " + cameraId);
+        }
+        if (frameLength + count > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(frame.length * 2, frameLength + count));
+        }
+        while (count > 0) {
+            if (readPosition == readLimit) {
+                fill();
+            }
+            int n = Math.min(count, readLimit - readPosition);
+            System.arraycopy(readBuffer, readPosition, frame, frameLength, n);
+            readPosition += n;
+            frameLength += n;
+            count -= n;
+        }
+    }
+
+    private int read() throws IOException {
+        if (readPosition == readLimit) {
+            fill();
+        }
+        return readBuffer[readPosition++] & 0xFF;
+    }
+
+    private void fill() throws IOException {
+        int n = in.read(readBuffer);
+        if (n < 0) {
+            throw new EOFException();
+        }
+        readPosition = 0;
+        readLimit = n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+}
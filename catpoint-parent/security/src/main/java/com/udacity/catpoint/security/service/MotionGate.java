@@ -0,0 +1,125 @@
+package com.udacity.catpoint.security.service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+
+/**
+ * Cheap frame-difference check that runs before an image is sent for analysis. Each frame is
+ * sampled into a small brightness grid and compared with the grid of the last frame that was let
+ * through; if too few cells changed, the scene is considered static and the frame can be skipped.
+ * <p>
+ * Comparing against the last frame let through, rather than simply the previous frame, means a
+ * slow drift still opens the gate once it adds up. All buffers are allocated up front, so checking
+ * a frame does not allocate.
+ */
+public class MotionGate {
+
+    public static final int DEFAULT_GRID_WIDTH = 32;
+    public static final int DEFAULT_GRID_HEIGHT = 24;
+    public static final int DEFAULT_PIXEL_DELTA = 24;
+    public static final float DEFAULT_CHANGED_FRACTION = 0.02f;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int pixelDelta;
+    private final int changedCellThreshold;
+
+    private final int[] reference;
+    private final int[] current;
+    private int[] pixel = new int[4];
+    private boolean hasReference;
+
+    public MotionGate() {
+        this(DEFAULT_GRID_WIDTH, DEFAULT_GRID_HEIGHT, DEFAULT_PIXEL_DELTA, DEFAULT_CHANGED_FRACTION);
+    }
+
+    /**
+     * @param gridWidth Number of sample columns
+     * @param gridHeight Number of sample rows
+     * @param pixelDelta Brightness difference (0-255) for a cell to count as changed
+     * @param changedFraction Fraction of changed cells at or above which the frame has motion
+     */
+    public MotionGate(int gridWidth, int gridHeight, int pixelDelta, float changedFraction) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.pixelDelta = pixelDelta;
+        this.changedCellThreshold = Math.max(1, (int) Math.ceil(changedFraction * gridWidth * gridHeight));
+        this.reference = new int[gridWidth * gridHeight];
+        this.current = new int[gridWidth * gridHeight];
+    }
+
+    /**
+     * Returns true if the image differs enough from the last image let through to be worth
+     * analyzing, in which case it becomes the new reference frame. The first image always has motion.
+     *
+     * @param image The camera frame to check
+     */
+    public synchronized boolean hasMotion(BufferedImage image) {
+        if (image == null) {
+            return true;
+        }
+        sample(image);
+
+        boolean motion = !hasReference;
+        if (!motion) {
+            int changed = 0;
+            for (int i = 0; i < current.length && changed < changedCellThreshold; i++) {
+                if (Math.abs(current[i] - reference[i]) > pixelDelta) {
+                    changed++;
+                }
+            }
+            motion = changed >= changedCellThreshold;
+        }
+
+        if (motion) {
+            System.arraycopy(current, 0, reference, 0, current.length);
+            hasReference = true;
+        }
+        return motion;
+    }
+
+    /**
+     * Forgets the reference frame so the next image is always let through.
+     */
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * Samples the brightness at the center of each grid cell into {@link #current}.
+     */
+    private void sample(BufferedImage image) {
+        Raster raster = image.getRaster();
+        ColorModel colorModel = image.getColorModel();
+        IndexColorModel indexColorModel = colorModel instanceof IndexColorModel ? (IndexColorModel) colorModel : null;
+        int bands = raster.getNumBands();
+        if (pixel.length < bands) {
+            pixel = new int[bands];
+        }
+        //scale samples wider than 8 bits down to 0-255
+        int shift = indexColorModel == null ? Math.max(0, colorModel.getComponentSize(0) - 8) : 0;
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int row = 0; row < gridHeight; row++) {
+            int y = (int) ((row * 2L + 1) * height / (2L * gridHeight));
+            for (int column = 0; column < gridWidth; column++) {
+                int x = (int) ((column * 2L + 1) * width / (2L * gridWidth));
+                raster.getPixel(x, y, pixel);
+
+                int brightness;
+                if (indexColorModel != null) {
+                    int rgb = indexColorModel.getRGB(pixel[0]);
+                    brightness = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                } else if (bands >= 3) {
+                    brightness = ((pixel[0] >> shift) * 299 + (pixel[1] >> shift) * 587 + (pixel[2] >> shift) * 114) / 1000;
+                } else {
+                    brightness = pixel[0] >> shift;
+                }
+                current[row * gridWidth + column] = brightness;
+            }
+        }
+    }
+}
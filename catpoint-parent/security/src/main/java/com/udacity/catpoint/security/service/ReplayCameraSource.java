@@ -0,0 +1,65 @@
+package com.udacity.catpoint.security.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic camera that plays a fixed set of images, e.g. the sample JPEGs, in a loop at a steady
+ * frame interval. Useful for demos and for load testing the analysis pipeline without a camera.
+ */
+public class ReplayCameraSource implements CameraSource {
+
+    private final String cameraId;
+    private final List<byte[]> frames = new ArrayList<>();
+    private final long frameIntervalNanos;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private int next;
+    private long nextFrameNanos;
+
+    /**
+     * @param cameraId Id of the camera the images are reported for
+     * @param files Images to play, in order
+     * @param frameInterval Time between two frames
+     * @throws IOException If one of the files can't be read
+     */
+    public ReplayCameraSource(String cameraId, List<Path> files, Duration frameInterval) throws IOException {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("At least one image is needed for a replay");
+        }
+        this.cameraId = cameraId;
+        for (Path file : files) {
+            frames.add(Files.readAllBytes(file));
+        }
+        this.frameIntervalNanos = frameInterval.toNanos();
+        this.nextFrameNanos = System.nanoTime();
+    }
+
+    @Override
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    @Override
+    public byte[] nextFrame() throws InterruptedException {
+        long wait = nextFrameNanos - System.nanoTime();
+        if (closed.await(Math.max(0, wait), TimeUnit.NANOSECONDS)) {
+            return null;
+        }
+        //keep a steady rate even if the caller was late for a frame
+        nextFrameNanos = Math.max(nextFrameNanos, System.nanoTime() - frameIntervalNanos) + frameIntervalNanos;
+        byte[] frame = frames.get(next);
+        next = (next + 1) % frames.size();
+        return frame;
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+    }
+}
@@ -1,17 +1,31 @@
 package com.udacity.catpoint.security.service;
 
+import com.udacity.catpoint.image.service.ImageClassification;
 import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.ScoringImageService;
 import com.udacity.catpoint.security.application.StatusListener;
 import com.udacity.catpoint.security.data.AlarmStatus;
 import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Camera;
 import com.udacity.catpoint.security.data.SecurityRepository;
 import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorIdIndex;
+import com.udacity.catpoint.security.data.SensorType;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Service that receives information about changes to the security system. Responsible for
@@ -19,17 +33,48 @@ import java.util.concurrent.ConcurrentSkipListSet;
  * <p>
  * This is the class that should contain most of the business logic for our system, and it is the
  * class you will be writing unit tests for.
+ * <p>
+ * The system state is kept in an immutable {@link SecurityState} snapshot. Every event computes
+ * the next snapshot from the current one and installs it with compare-and-set, retrying if another
+ * thread got there first, so events from many threads never lose a transition and never wait on a
+ * lock. The repository is only written to after a transition has been applied.
+ * <p>
+ * Listeners are never called on the thread that changed the state. Each one is notified through
+ * its own queue, see {@link #addStatusListener(StatusListener, Executor, boolean)}.
  */
 public class SecurityService {
 
+    public static final float DEFAULT_CAT_CONFIDENCE_THRESHOLD = 50.0f;
+    //coalesced listeners see at most one sensor status change per display frame
+    private static final long FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
     private final ImageService imageService;
     private final SecurityRepository securityRepository;
-    private final Set<StatusListener> statusListeners = new HashSet<>();
-    private boolean cat;
+    private final StatusEventDispatcher statusDispatcher = new StatusEventDispatcher();
+    private final CameraRegistry cameraRegistry = new CameraRegistry();
+    private final AtomicReference<SecurityState> state;
+    //copied on every change so event ingestion can look sensors up without locking
+    private final Object sensorIndexLock = new Object();
+    private volatile SensorIdIndex sensorIndex;
+    private ImageAnalysisPipeline imageAnalysisPipeline;
+    private volatile float catConfidenceThreshold = DEFAULT_CAT_CONFIDENCE_THRESHOLD;
+    private Executor callbackExecutor;
 
     public SecurityService(SecurityRepository securityRepository, ImageService imageService) {
         this.securityRepository = securityRepository;
         this.imageService = imageService;
+        SecurityState loaded = new SecurityState(securityRepository.getArmingStatus(),
+                securityRepository.getAlarmStatus(), false);
+        Set<Sensor> sensors = securityRepository.getSensors();
+        SensorIdIndex index = new SensorIdIndex(sensors.size());
+        for (Sensor sensor : sensors) {
+            index.put(sensor);
+            if (isActive(sensor)) {
+                loaded = loaded.withActiveSensorChange(sensor.getSensorType(), 1);
+            }
+        }
+        this.state = new AtomicReference<>(loaded);
+        this.sensorIndex = index;
     }
 
     /**
@@ -39,63 +84,125 @@ public class SecurityService {
      * @param armingStatus
      */
     public void setArmingStatus(ArmingStatus armingStatus) {
-        if(armingStatus == ArmingStatus.DISARMED) {
-            securityRepository.setArmingStatus(armingStatus);
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        } else if (getArmingStatus() == ArmingStatus.DISARMED) {
-            securityRepository.setArmingStatus(armingStatus);
-            // got armed, set all sensors inactive
-            deactivateAllSensors();
-            // set to alarm if armed home and cat found
-            if (armingStatus == ArmingStatus.ARMED_HOME && cat)
-                setAlarmStatus(AlarmStatus.ALARM);
-        } else if (getArmingStatus() == ArmingStatus.ARMED_AWAY) {
-            // already armed, no need to deactivate sensors
-            securityRepository.setArmingStatus(armingStatus);
+        // persist the arming change and all resulting sensor and alarm changes as one unit of work
+        securityRepository.beginTransaction();
+        try {
+            SecurityState current;
+            SecurityState next;
+            do {
+                current = state.get();
+                if (armingStatus == ArmingStatus.DISARMED) {
+                    next = current.withArmingStatus(armingStatus).withAlarmStatus(AlarmStatus.NO_ALARM);
+                } else if (current.getArmingStatus() == ArmingStatus.DISARMED
+                        || current.getArmingStatus() == ArmingStatus.ARMED_AWAY) {
+                    next = current.withArmingStatus(armingStatus);
+                } else {
+                    // already armed home, nothing changes
+                    return;
+                }
+            } while (!state.compareAndSet(current, next));
+
+            persistArmingStatus();
+            if (armingStatus == ArmingStatus.DISARMED) {
+                alarmStatusChanged(AlarmStatus.NO_ALARM);
+                return;
+            }
+            if (current.getArmingStatus() == ArmingStatus.DISARMED) {
+                // got armed, set all sensors inactive
+                deactivateAllSensors();
+            }
             // set to alarm if armed home and cat found
-            if (armingStatus == ArmingStatus.ARMED_HOME && cat)
-                setAlarmStatus(AlarmStatus.ALARM);
+            raiseAlarmIfCatAtHome();
+        } finally {
+            securityRepository.commitTransaction();
         }
     }
 
     private void deactivateAllSensors() {
-        ConcurrentSkipListSet<Sensor> sensors = new ConcurrentSkipListSet<>(getSensors());
-        sensors.forEach(sensor -> changeSensorActivationStatus(sensor, false));
-        // notify the status listeners of the change in sensor statuses
-        statusListeners.forEach(StatusListener::sensorStatusChanged);
+        // copy, as the repository may re-insert updated sensors into the set it returns
+        changeSensorActivationStatus(new ArrayList<>(getSensors()), false);
+    }
+
+    private void raiseAlarmIfCatAtHome() {
+        SecurityState current;
+        do {
+            current = state.get();
+            if (!current.isCatDetected() || current.getArmingStatus() != ArmingStatus.ARMED_HOME) {
+                return;
+            }
+        } while (!state.compareAndSet(current, current.withAlarmStatus(AlarmStatus.ALARM)));
+        alarmStatusChanged(AlarmStatus.ALARM);
     }
 
     /**
      * Internal method that handles alarm status changes based on whether
-     * the camera currently shows a cat.
-     *
-     * @param cat True if a cat is detected, otherwise false.
+     * any camera currently shows a cat.
      */
-    private void catDetected(Boolean cat) {
-        if(cat && getArmingStatus() == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        } else if (!cat && allSensorsInactive()){
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        }
-
-        statusListeners.forEach(sl -> sl.catDetected(cat));
+    private void catDetected() {
+        catDetected(false);
     }
 
-    private boolean allSensorsInactive() {
-        return getSensors().stream().noneMatch(Sensor::getActive);
+    /**
+     * @param skipUnchanged If true, nothing is written or sent to listeners when neither the cat
+     *                      verdict nor the alarm status changes
+     */
+    private void catDetected(boolean skipUnchanged) {
+        SecurityState current;
+        SecurityState next;
+        boolean cat;
+        AlarmStatus alarmStatus;
+        do {
+            current = state.get();
+            // read the cameras after the snapshot, so a verdict landing in between forces a retry
+            cat = cameraRegistry.anyCatDetected();
+            alarmStatus = null;
+            if (cat && current.getArmingStatus() == ArmingStatus.ARMED_HOME) {
+                alarmStatus = AlarmStatus.ALARM;
+            } else if (!cat && current.getActiveSensorCount() == 0) {
+                alarmStatus = AlarmStatus.NO_ALARM;
+            }
+            if (skipUnchanged && current.isCatDetected() == cat
+                    && (alarmStatus == null || alarmStatus == current.getAlarmStatus())) {
+                return;
+            }
+            next = current.withCatDetected(cat);
+            if (alarmStatus != null) {
+                next = next.withAlarmStatus(alarmStatus);
+            }
+        } while (!state.compareAndSet(current, next));
+
+        if (alarmStatus != null) {
+            alarmStatusChanged(alarmStatus);
+        }
+        statusDispatcher.catDetected(cat);
     }
 
     /**
-     * Register the StatusListener for alarm system updates from within the SecurityService.
+     * Register the StatusListener for alarm system updates from within the SecurityService. The
+     * listener receives every event in order on a background thread; Swing components should use
+     * {@link #addStatusListener(StatusListener, Executor, boolean)} with SwingUtilities::invokeLater.
      *
      * @param statusListener
      */
     public void addStatusListener(StatusListener statusListener) {
-        statusListeners.add(statusListener);
+        addStatusListener(statusListener, StatusEventDispatcher.backgroundExecutor(), false);
+    }
+
+    /**
+     * Register the StatusListener to be notified on the given executor. Registering a listener
+     * that is already registered has no effect.
+     *
+     * @param statusListener
+     * @param executor Executor the listener is called on, one event at a time
+     * @param coalesce If true, the listener only receives the latest alarm status and cat verdict,
+     *                 and at most one sensor status change per frame
+     */
+    public void addStatusListener(StatusListener statusListener, Executor executor, boolean coalesce) {
+        statusDispatcher.subscribe(statusListener, executor, coalesce ? FRAME_INTERVAL_NANOS : 0);
     }
 
     public void removeStatusListener(StatusListener statusListener) {
-        statusListeners.remove(statusListener);
+        statusDispatcher.unsubscribe(statusListener);
     }
 
     /**
@@ -104,82 +211,513 @@ public class SecurityService {
      * @param status
      */
     public void setAlarmStatus(AlarmStatus status) {
-        securityRepository.setAlarmStatus(status);
-        statusListeners.forEach(sl -> sl.notify(status));
+        SecurityState current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, current.withAlarmStatus(status)));
+        alarmStatusChanged(status);
+    }
+
+    /**
+     * Persists the alarm status and notifies listeners, after a transition to the status has been applied.
+     */
+    private void alarmStatusChanged(AlarmStatus status) {
+        // another thread may move the alarm on while we write, so write until the latest status is persisted
+        AlarmStatus persisted;
+        do {
+            persisted = state.get().getAlarmStatus();
+            securityRepository.setAlarmStatus(persisted);
+        } while (state.get().getAlarmStatus() != persisted);
+        statusDispatcher.alarmStatusChanged(status);
+    }
+
+    private void persistArmingStatus() {
+        ArmingStatus persisted;
+        do {
+            persisted = state.get().getArmingStatus();
+            securityRepository.setArmingStatus(persisted);
+        } while (state.get().getArmingStatus() != persisted);
+    }
+
+    /**
+     * Change the activation status for the specified sensor and update alarm status if necessary.
+     *
+     * @param sensor
+     * @param active
+     */
+    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        applySensorActivation(sensor, active);
+        securityRepository.updateSensor(sensor);
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been activated.
+     * Change the activation status for all the specified sensors, updating the alarm status as if
+     * each sensor had been changed individually. The sensors are persisted in a single batch and
+     * listeners receive a single sensor status notification.
+     *
+     * @param sensors
+     * @param active
      */
-    private void handleSensorActivated() {
-        if (Objects.nonNull(securityRepository.getAlarmStatus())) {
-            switch (securityRepository.getAlarmStatus()) {
-                case NO_ALARM:
-                    setAlarmStatus(AlarmStatus.PENDING_ALARM);
-                    break;
-                case PENDING_ALARM:
-                    setAlarmStatus(AlarmStatus.ALARM);
+    public void changeSensorActivationStatus(Collection<Sensor> sensors, Boolean active) {
+        securityRepository.beginTransaction();
+        try {
+            sensors.forEach(sensor -> applySensorActivation(sensor, active));
+            securityRepository.updateSensors(sensors);
+        } finally {
+            securityRepository.commitTransaction();
+        }
+        statusDispatcher.sensorStatusChanged();
+    }
+
+    private void applySensorActivation(Sensor sensor, Boolean active) {
+        // claim the sensor's previous status first, so concurrent changes to one sensor count once each
+        boolean wasActive = isActive(sensor.getAndSetActive(active));
+        int countChange = (active ? 1 : 0) - (wasActive ? 1 : 0);
+
+        SecurityState current;
+        SecurityState next;
+        AlarmStatus alarmStatus;
+        do {
+            current = state.get();
+            alarmStatus = alarmStatusAfterSensorChange(current.getAlarmStatus(), current.getArmingStatus(), wasActive, active);
+            next = current.withActiveSensorChange(sensor.getSensorType(), countChange);
+            if (alarmStatus != null) {
+                next = next.withAlarmStatus(alarmStatus);
             }
+        } while (!state.compareAndSet(current, next));
+
+        if (alarmStatus != null) {
+            alarmStatusChanged(alarmStatus);
         }
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been deactivated
+     * Applies a batch of sensor changes from {@link SensorEventLoop} as one state transition and
+     * one repository write. The alarm status moves exactly as if the changes had been made one at
+     * a time, but only the final alarm status is persisted and reported to listeners.
+     *
+     * @param sensors The changed sensors, in the order the changes happened
+     * @param active The new activation status of each sensor
+     * @param wasActive Scratch space receiving the previous activation status of each sensor
+     * @param count Number of changes in the arrays
      */
-    private void handleSensorDeactivated() {
-        if (securityRepository.getAlarmStatus() == AlarmStatus.PENDING_ALARM) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
+    void applySensorEvents(Sensor[] sensors, boolean[] active, boolean[] wasActive, int count) {
+        for (int i = 0; i < count; i++) {
+            wasActive[i] = isActive(sensors[i].getAndSetActive(active[i]));
+        }
+
+        int[] countChanges = new int[SensorType.values().length];
+        SecurityState current;
+        SecurityState next;
+        boolean alarmChanged;
+        do {
+            current = state.get();
+            Arrays.fill(countChanges, 0);
+            AlarmStatus alarmStatus = current.getAlarmStatus();
+            alarmChanged = false;
+            for (int i = 0; i < count; i++) {
+                AlarmStatus changed = alarmStatusAfterSensorChange(alarmStatus, current.getArmingStatus(), wasActive[i], active[i]);
+                if (changed != null) {
+                    alarmStatus = changed;
+                    alarmChanged = true;
+                }
+                countChanges[sensors[i].getSensorType().ordinal()] += (active[i] ? 1 : 0) - (wasActive[i] ? 1 : 0);
+            }
+            next = current.withActiveSensorChanges(countChanges);
+            if (alarmChanged) {
+                next = next.withAlarmStatus(alarmStatus);
+            }
+        } while (!state.compareAndSet(current, next));
+
+        securityRepository.beginTransaction();
+        try {
+            securityRepository.updateSensors(Arrays.asList(sensors).subList(0, count));
+            if (alarmChanged) {
+                alarmStatusChanged(next.getAlarmStatus());
+            }
+        } finally {
+            securityRepository.commitTransaction();
         }
+        statusDispatcher.sensorStatusChanged();
     }
 
     /**
-     * Change the activation status for the specified sensor and update alarm status if necessary.
+     * @return The alarm status after a sensor changed from wasActive to active, or null if it doesn't change
+     */
+    private static AlarmStatus alarmStatusAfterSensorChange(AlarmStatus alarmStatus, ArmingStatus armingStatus,
+                                                            boolean wasActive, boolean active) {
+        if (alarmStatus == AlarmStatus.ALARM) {
+            return null;
+        }
+        if (active && armingStatus != ArmingStatus.DISARMED) {
+            // from inactive to active or active to active
+            if (alarmStatus == AlarmStatus.NO_ALARM) {
+                return AlarmStatus.PENDING_ALARM;
+            } else if (alarmStatus == AlarmStatus.PENDING_ALARM) {
+                return AlarmStatus.ALARM;
+            }
+        } else if (wasActive && !active && alarmStatus == AlarmStatus.PENDING_ALARM) {
+            // from active to inactive
+            return AlarmStatus.NO_ALARM;
+        }
+        return null;
+    }
+
+    /**
+     * Counts the active sensors among the given ones as added to, or removed from, the system.
      *
-     * @param sensor
-     * @param active
+     * @param countChange 1 if the sensors were added, -1 if they were removed
      */
-    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
-        if (getAlarmStatus() != AlarmStatus.ALARM) {
-            if (active && getArmingStatus() != ArmingStatus.DISARMED) {
-                // from inactive to active or active to active
-                handleSensorActivated();
-            } else if (sensor.getActive() && !active) {
-                // from active to inactive
-                handleSensorDeactivated();
+    private void changeActiveSensorCounts(Collection<Sensor> sensors, int countChange) {
+        SecurityState current;
+        SecurityState next;
+        do {
+            current = state.get();
+            next = current;
+            for (Sensor sensor : sensors) {
+                if (isActive(sensor)) {
+                    next = next.withActiveSensorChange(sensor.getSensorType(), countChange);
+                }
             }
+        } while (current != next && !state.compareAndSet(current, next));
+    }
+
+    /**
+     * Replaces the sensor index with a changed copy. Timestamps the event loop writes to the old
+     * index while it is being copied are lost, which at worst lets one out-of-order event through.
+     */
+    private void updateSensorIndex(Consumer<SensorIdIndex> change) {
+        synchronized (sensorIndexLock) {
+            SensorIdIndex copy = sensorIndex.copy();
+            change.accept(copy);
+            sensorIndex = copy;
         }
-        sensor.setActive(active);
-        securityRepository.updateSensor(sensor);
     }
 
     /**
-     * Send an image to the SecurityService for processing. The securityService will use its provided
-     * ImageService to analyze the image for cats and update the alarm status accordingly.
+     * @return The current index of sensors by id. Only the event loop may write to it, and only timestamps.
+     */
+    SensorIdIndex sensorIndex() {
+        return sensorIndex;
+    }
+
+    private static boolean isActive(Sensor sensor) {
+        return isActive(sensor.getActive());
+    }
+
+    private static boolean isActive(Boolean active) {
+        return Boolean.TRUE.equals(active);
+    }
+
+    /**
+     * Send an image from the default camera to the SecurityService for processing. The securityService
+     * will use its provided ImageService to analyze the image for cats and update the alarm status accordingly.
      *
      * @param currentCameraImage
      */
     public void processImage(BufferedImage currentCameraImage) {
-        cat = imageService.imageContainsCat(currentCameraImage, 50.0f);
-        catDetected(cat);
+        processImage(CameraRegistry.DEFAULT_CAMERA_ID, currentCameraImage);
+    }
+
+    /**
+     * Send an image from a specific camera for processing. The alarm reacts to a cat as long as at
+     * least one camera's latest image shows one.
+     *
+     * @param cameraId The camera that took the image
+     * @param currentCameraImage
+     */
+    public void processImage(String cameraId, BufferedImage currentCameraImage) {
+        CameraRegistry.CameraState camera = cameraRegistry.state(cameraId);
+        MotionGate motionGate = camera.motionGate;
+        if (motionGate != null && !motionGate.hasMotion(currentCameraImage)) {
+            // static scene, the last verdict still holds
+            catDetected(cameraRegistry.isFrameVoting());
+            return;
+        }
+        applyClassification(cameraId, classify(currentCameraImage));
+    }
+
+    /**
+     * Scores the image if the ImageService can, otherwise turns its verdict for the current
+     * threshold into a classification.
+     */
+    private ImageClassification classify(BufferedImage image) {
+        if (imageService instanceof ScoringImageService) {
+            return ((ScoringImageService) imageService).classify(image);
+        }
+        return ImageClassification.verdict(imageService.imageContainsCat(image, catConfidenceThreshold));
+    }
+
+    /**
+     * Queue an image from the default camera for analysis without waiting for the ImageService.
+     *
+     * @param currentCameraImage
+     * @return A future completing with true if a cat was detected
+     * @see #processImageAsync(String, BufferedImage)
+     */
+    public CompletableFuture<Boolean> processImageAsync(BufferedImage currentCameraImage) {
+        return processImageAsync(CameraRegistry.DEFAULT_CAMERA_ID, currentCameraImage);
+    }
+
+    /**
+     * Queue an image for analysis without waiting for the ImageService. The alarm status is updated
+     * once the image has been analyzed, on the executor given to {@link #configureImageAnalysis}.
+     * Frames that arrive faster than they can be analyzed are dropped or coalesced per camera
+     * according to the configured back-pressure policy, and the analysis workers are shared between
+     * cameras according to their priority.
+     *
+     * @param cameraId The camera that took the image
+     * @param currentCameraImage
+     * @return A future completing with true if this camera's image contains a cat
+     */
+    public synchronized CompletableFuture<Boolean> processImageAsync(String cameraId, BufferedImage currentCameraImage) {
+        if (imageAnalysisPipeline == null) {
+            configureImageAnalysis(ImageAnalysisPipeline.DEFAULT_WORKER_COUNT,
+                    ImageAnalysisPipeline.DEFAULT_QUEUE_CAPACITY,
+                    ImageAnalysisPipeline.BackPressurePolicy.COALESCE_LATEST, Runnable::run);
+        }
+        CameraRegistry.CameraState camera = cameraRegistry.state(cameraId);
+        MotionGate motionGate = camera.motionGate;
+        if (motionGate != null && !motionGate.hasMotion(currentCameraImage)) {
+            // static scene: share the verdict of a frame still being analyzed, or reuse the last one
+            if (!camera.lastAnalysis.isDone()) {
+                return camera.lastAnalysis.copy();
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                catDetected(cameraRegistry.isFrameVoting());
+                return camera.isCatDetected();
+            }, callbackExecutor);
+        }
+        camera.lastAnalysis = imageAnalysisPipeline.submit(cameraId, currentCameraImage);
+        return camera.lastAnalysis;
+    }
+
+    /**
+     * Configure the worker pool used by {@link #processImageAsync}, replacing any existing one.
+     *
+     * @param workerCount Number of images analyzed concurrently
+     * @param queueCapacity Maximum number of images waiting for analysis, per camera
+     * @param policy What to do with new images while a camera's queue is full
+     * @param callbackExecutor Executor that applies each verdict to the system state
+     */
+    public synchronized void configureImageAnalysis(int workerCount, int queueCapacity,
+                                                    ImageAnalysisPipeline.BackPressurePolicy policy,
+                                                    Executor callbackExecutor) {
+        configureImageAnalysis(workerCount, workerCount, queueCapacity, policy, callbackExecutor);
+    }
+
+    /**
+     * Configure the worker pool used by {@link #processImageAsync}, replacing any existing one. With
+     * an {@link com.udacity.catpoint.image.service.AsyncImageService} the workers don't wait for
+     * each verdict, so more images than workers can be in flight, several per camera.
+     *
+     * @param workerCount Number of threads handing images to the ImageService
+     * @param maxInFlight Number of images analyzed concurrently
+     * @param queueCapacity Maximum number of images waiting for analysis, per camera
+     * @param policy What to do with new images while a camera's queue is full
+     * @param callbackExecutor Executor that applies each verdict to the system state
+     */
+    public synchronized void configureImageAnalysis(int workerCount, int maxInFlight, int queueCapacity,
+                                                    ImageAnalysisPipeline.BackPressurePolicy policy,
+                                                    Executor callbackExecutor) {
+        if (imageAnalysisPipeline != null) {
+            imageAnalysisPipeline.close();
+        }
+        imageAnalysisPipeline = new ImageAnalysisPipeline(imageService, catConfidenceThreshold,
+                this::applyClassification, callbackExecutor,
+                cameraId -> cameraRegistry.schedulingWeight(cameraId, getArmingStatus()),
+                workerCount, maxInFlight, queueCapacity, policy);
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Give every camera a motion gate that its images must pass before they are sent to the
+     * ImageService. Images of an unchanged scene are not analyzed; the camera's last verdict is
+     * reported for them instead.
+     *
+     * @param motionGateFactory Creates one gate per camera, or null to analyze every image
+     */
+    public void setMotionGateFactory(Supplier<MotionGate> motionGateFactory) {
+        cameraRegistry.setMotionGateFactory(motionGateFactory);
+    }
+
+    /**
+     * Register a camera, or update the location and priority of a known one. Cameras that send
+     * images without being registered are treated as low priority interior cameras.
+     *
+     * @param camera
+     */
+    public void registerCamera(Camera camera) {
+        cameraRegistry.register(camera);
+    }
+
+    /**
+     * Remove a camera. A cat it was seeing no longer counts towards the alarm, and its images still
+     * waiting for analysis are dropped.
+     *
+     * @param cameraId
+     */
+    public synchronized void unregisterCamera(String cameraId) {
+        // frames still waiting for analysis would only report on a camera that is gone
+        if (imageAnalysisPipeline != null) {
+            imageAnalysisPipeline.removeCamera(cameraId);
+        }
+        if (cameraRegistry.unregister(cameraId)) {
+            // the cat that camera saw is gone too, which may clear the alarm
+            catDetected(cameraRegistry.isFrameVoting());
+        }
+    }
+
+    public Collection<Camera> getCameras() {
+        return cameraRegistry.getCameras();
+    }
+
+    /**
+     * @return True if the latest image from the camera contains a cat
+     */
+    public boolean isCatDetected(String cameraId) {
+        return cameraRegistry.isCatDetected(cameraId);
+    }
+
+    /**
+     * @return The confidence, from 0 to 100, that the camera's latest analyzed image contains a cat.
+     * Image services that can't score images report either 0 or 100.
+     */
+    public float getCatConfidence(String cameraId) {
+        return cameraRegistry.getCatConfidence(cameraId);
+    }
+
+    public float getCatConfidenceThreshold() {
+        return catConfidenceThreshold;
+    }
+
+    /**
+     * Change the confidence an image needs for a cat to be detected. The latest classification of
+     * every camera is judged again against the new threshold without analyzing any image again,
+     * as long as the ImageService can score images.
+     *
+     * @param catConfidenceThreshold Minimum confidence, from 0 to 100
+     */
+    public synchronized void setCatConfidenceThreshold(float catConfidenceThreshold) {
+        this.catConfidenceThreshold = catConfidenceThreshold;
+        if (imageAnalysisPipeline != null) {
+            imageAnalysisPipeline.setConfidenceThreshold(catConfidenceThreshold);
+        }
+        cameraRegistry.applyThreshold(catConfidenceThreshold);
+        catDetected();
+    }
+
+    /**
+     * Have each camera's latest frames vote on its verdict, so a cat has to show up in several
+     * frames before the alarm reacts and has to be gone from most of them before it clears.
+     * Frames that leave the verdict and the alarm status as they were are not written to the
+     * repository or sent to listeners.
+     *
+     * @param windowFrames Number of latest frames that vote, per camera
+     * @param catVotes Cat votes needed for a camera to start seeing a cat
+     * @param clearVotes Cat votes at or below which a camera stops seeing a cat, less than catVotes
+     */
+    public synchronized void setFrameVoting(int windowFrames, int catVotes, int clearVotes) {
+        cameraRegistry.setFrameVoting(windowFrames, catVotes, clearVotes);
+    }
+
+    private boolean applyClassification(String cameraId, ImageClassification classification) {
+        boolean cat = cameraRegistry.updateClassification(cameraId, classification, catConfidenceThreshold);
+        catDetected(cameraRegistry.isFrameVoting());
+        return cat;
     }
 
     public AlarmStatus getAlarmStatus() {
-        return securityRepository.getAlarmStatus();
+        return state.get().getAlarmStatus();
+    }
+
+    /**
+     * @return A consistent snapshot of the arming status, alarm status, cat verdict and active sensor count
+     */
+    public SecurityState getState() {
+        return state.get();
     }
 
     public Set<Sensor> getSensors() {
         return securityRepository.getSensors();
     }
 
+    /**
+     * @return The sensors as of the last sensor added or removed, safe to read from any thread
+     * unlike the repository's set
+     */
+    public List<Sensor> getSensorSnapshot() {
+        return List.of(sensorIndex.toArray());
+    }
+
+    /**
+     * @return The number of active sensors, kept up to date as sensors change rather than counted on request
+     */
+    public int getActiveSensorCount() {
+        return state.get().getActiveSensorCount();
+    }
+
+    /**
+     * @return The number of active sensors of the given type, e.g. to show how many doors are open
+     */
+    public int getActiveSensorCount(SensorType sensorType) {
+        return state.get().getActiveSensorCount(sensorType);
+    }
+
+    /**
+     * @return The number of active sensors of every sensor type, all taken from the same snapshot
+     */
+    public Map<SensorType, Integer> getActiveSensorCounts() {
+        return state.get().getActiveSensorCounts();
+    }
+
     public void addSensor(Sensor sensor) {
+        boolean known = sensorIndex.indexOf(sensor.getSensorId()) >= 0;
         securityRepository.addSensor(sensor);
+        updateSensorIndex(index -> index.put(sensor));
+        if (!known) {
+            changeActiveSensorCounts(List.of(sensor), 1);
+        }
     }
 
     public void removeSensor(Sensor sensor) {
+        boolean known = sensorIndex.indexOf(sensor.getSensorId()) >= 0;
         securityRepository.removeSensor(sensor);
+        updateSensorIndex(index -> index.remove(sensor.getSensorId()));
+        if (known) {
+            changeActiveSensorCounts(List.of(sensor), -1);
+        }
+    }
+
+    /**
+     * Add several sensors at once, persisting them in a single batch and notifying listeners once.
+     *
+     * @param sensors
+     */
+    public void addSensors(Collection<Sensor> sensors) {
+        Set<Sensor> known = getSensors();
+        List<Sensor> added = sensors.stream().filter(sensor -> !known.contains(sensor)).collect(Collectors.toList());
+        securityRepository.addSensors(sensors);
+        updateSensorIndex(index -> sensors.forEach(index::put));
+        changeActiveSensorCounts(added, 1);
+        statusDispatcher.sensorStatusChanged();
+    }
+
+    /**
+     * Remove several sensors at once, persisting the removal in a single batch and notifying listeners once.
+     *
+     * @param sensors
+     */
+    public void removeSensors(Collection<Sensor> sensors) {
+        Set<Sensor> known = getSensors();
+        List<Sensor> removed = sensors.stream().filter(known::contains).collect(Collectors.toList());
+        securityRepository.removeSensors(sensors);
+        updateSensorIndex(index -> sensors.forEach(sensor -> index.remove(sensor.getSensorId())));
+        changeActiveSensorCounts(removed, -1);
+        statusDispatcher.sensorStatusChanged();
     }
 
     public ArmingStatus getArmingStatus() {
-        return securityRepository.getArmingStatus();
+        return state.get().getArmingStatus();
     }
 }
@@ -0,0 +1,124 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.SensorType;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the system state held by the SecurityService. Every change produces a new
+ * snapshot, so a snapshot can be read and passed around without locking.
+ * <p>
+ * Active sensors are counted per sensor type as they change, so the counts are always available
+ * without going through the sensors.
+ */
+public final class SecurityState {
+
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+
+    private final ArmingStatus armingStatus;
+    private final AlarmStatus alarmStatus;
+    private final boolean catDetected;
+    private final int activeSensorCount;
+    //indexed by sensor type ordinal, never modified once the state is created
+    private final int[] activeSensorCounts;
+
+    private SecurityState(ArmingStatus armingStatus, AlarmStatus alarmStatus, boolean catDetected,
+                          int activeSensorCount, int[] activeSensorCounts) {
+        this.armingStatus = armingStatus;
+        this.alarmStatus = alarmStatus;
+        this.catDetected = catDetected;
+        this.activeSensorCount = activeSensorCount;
+        this.activeSensorCounts = activeSensorCounts;
+    }
+
+    SecurityState(ArmingStatus armingStatus, AlarmStatus alarmStatus, boolean catDetected) {
+        this(armingStatus, alarmStatus, catDetected, 0, new int[SENSOR_TYPES.length]);
+    }
+
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    /**
+     * @return True if at least one camera's latest image contains a cat
+     */
+    public boolean isCatDetected() {
+        return catDetected;
+    }
+
+    public int getActiveSensorCount() {
+        return activeSensorCount;
+    }
+
+    public int getActiveSensorCount(SensorType sensorType) {
+        return activeSensorCounts[sensorType.ordinal()];
+    }
+
+    /**
+     * @return The number of active sensors of every sensor type
+     */
+    public Map<SensorType, Integer> getActiveSensorCounts() {
+        Map<SensorType, Integer> counts = new EnumMap<>(SensorType.class);
+        for (SensorType sensorType : SENSOR_TYPES) {
+            counts.put(sensorType, activeSensorCounts[sensorType.ordinal()]);
+        }
+        return counts;
+    }
+
+    SecurityState withArmingStatus(ArmingStatus armingStatus) {
+        return new SecurityState(armingStatus, alarmStatus, catDetected, activeSensorCount, activeSensorCounts);
+    }
+
+    SecurityState withAlarmStatus(AlarmStatus alarmStatus) {
+        return new SecurityState(armingStatus, alarmStatus, catDetected, activeSensorCount, activeSensorCounts);
+    }
+
+    SecurityState withCatDetected(boolean catDetected) {
+        return new SecurityState(armingStatus, alarmStatus, catDetected, activeSensorCount, activeSensorCounts);
+    }
+
+    /**
+     * @param sensorType Type of the sensors that changed
+     * @param countChange Number of sensors of the type that became active, negative if they became inactive
+     */
+    SecurityState withActiveSensorChange(SensorType sensorType, int countChange) {
+        if (countChange == 0) {
+            return this;
+        }
+        int[] counts = activeSensorCounts.clone();
+        counts[sensorType.ordinal()] += countChange;
+        return new SecurityState(armingStatus, alarmStatus, catDetected, activeSensorCount + countChange, counts);
+    }
+
+    /**
+     * @param countChanges Change in the number of active sensors, indexed by sensor type ordinal
+     */
+    SecurityState withActiveSensorChanges(int[] countChanges) {
+        int[] counts = activeSensorCounts.clone();
+        int total = activeSensorCount;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += countChanges[i];
+            total += countChanges[i];
+        }
+        return new SecurityState(armingStatus, alarmStatus, catDetected, total, counts);
+    }
+
+    @Override
+    public String toString() {
+        return "SecurityState{" +
+                "armingStatus=" + armingStatus +
+                ", alarmStatus=" + alarmStatus +
+                ", catDetected=" + catDetected +
+                ", activeSensorCount=" + activeSensorCount +
+                ", activeSensorCounts=" + Arrays.toString(activeSensorCounts) +
+                '}';
+    }
+}
@@ -0,0 +1,282 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorIdIndex;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingests compact sensor events (sensor id, new state, timestamp) from hardware gateways and
+ * applies them to the SecurityService on a single writer thread, in the order they were published.
+ * <p>
+ * Events are written into a preallocated ring buffer of primitive arrays, so publishing an event
+ * does not allocate. Any number of threads may publish: each claims a sequence number, fills the
+ * slot and then marks it published. The writer thread drains every published event in sequence
+ * order, up to a maximum batch size, and applies the batch to the service as one state transition
+ * and one repository write.
+ * <p>
+ * Events for unknown sensors, and events older than the last event applied to the same sensor,
+ * are dropped. The time from publishing an event to it being applied is recorded in a histogram.
+ */
+public class SensorEventLoop implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+    //how long the writer busy-waits for new events before parking, and for how long it parks
+    private static final int SPINS_BEFORE_PARKING = 1000;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final SecurityService securityService;
+    private final int capacity;
+    private final int mask;
+    private final int maxBatchSize;
+
+    //ring buffer slots
+    private final long[] idMostSignificantBits;
+    private final long[] idLeastSignificantBits;
+    private final boolean[] states;
+    private final long[] timestamps;
+    private final long[] publishNanos;
+    private final AtomicLongArray publishedSequences;
+
+    //next sequence to hand to a publisher, and next sequence the writer will apply
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final AtomicLong consumedSequence = new AtomicLong();
+
+    //batch scratch space, only touched by the writer thread
+    private final Sensor[] batchSensors;
+    private final boolean[] batchStates;
+    private final boolean[] batchWasActive;
+    private final int[] batchSlots;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder appliedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public SensorEventLoop(SecurityService securityService) {
+        this(securityService, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param securityService Service the events are applied to
+     * @param capacity Number of events the ring buffer holds, a power of two
+     * @param maxBatchSize Maximum number of events applied in one state transition
+     */
+    public SensorEventLoop(SecurityService securityService, int capacity, int maxBatchSize) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.securityService = securityService;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.maxBatchSize = Math.min(maxBatchSize, capacity);
+
+        idMostSignificantBits = new long[capacity];
+        idLeastSignificantBits = new long[capacity];
+        states = new boolean[capacity];
+        timestamps = new long[capacity];
+        publishNanos = new long[capacity];
+        publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedSequences.set(i, -1);
+        }
+
+        batchSensors = new Sensor[this.maxBatchSize];
+        batchStates = new boolean[this.maxBatchSize];
+        batchWasActive = new boolean[this.maxBatchSize];
+        batchSlots = new int[this.maxBatchSize];
+
+        writer = new Thread(this::run, "sensor-event-loop");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Publishes an event, waiting for space if the ring buffer is full.
+     *
+     * @param sensorId Id of the sensor that changed
+     * @param active New activation status of the sensor
+     * @param timestamp Time the gateway observed the change, in any unit that increases per sensor
+     */
+    public void publish(UUID sensorId, boolean active, long timestamp) {
+        publish(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits(), active, timestamp);
+    }
+
+    /**
+     * Publishes an event for the sensor whose id has the given halves, waiting for space if the
+     * ring buffer is full.
+     */
+    public void publish(long idMostSignificantBits, long idLeastSignificantBits, boolean active, long timestamp) {
+        long sequence = claimSequence.getAndIncrement();
+        while (sequence - consumedSequence.get() >= capacity) {
+            if (closed) {
+                throw new IllegalStateException("Sensor event loop is closed");
+            }
+            Thread.onSpinWait();
+        }
+        write(sequence, idMostSignificantBits, idLeastSignificantBits, active, timestamp);
+    }
+
+    /**
+     * Publishes an event only if the ring buffer has space for it.
+     *
+     * @return False if the ring buffer is full and the event was not published
+     */
+    public boolean tryPublish(long idMostSignificantBits, long idLeastSignificantBits, boolean active, long timestamp) {
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - consumedSequence.get() >= capacity) {
+                return false;
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+        write(sequence, idMostSignificantBits, idLeastSignificantBits, active, timestamp);
+        return true;
+    }
+
+    private void write(long sequence, long msb, long lsb, boolean active, long timestamp) {
+        int slot = (int) sequence & mask;
+        idMostSignificantBits[slot] = msb;
+        idLeastSignificantBits[slot] = lsb;
+        states[slot] = active;
+        timestamps[slot] = timestamp;
+        publishNanos[slot] = System.nanoTime();
+        //release the slot contents to the writer
+        publishedSequences.lazySet(slot, sequence);
+    }
+
+    /**
+     * @return Time from publishing an event until it was applied
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getAppliedEventCount() {
+        return appliedEvents.sum();
+    }
+
+    /**
+     * @return Number of events for unknown sensors or older than the sensor's last applied event
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * @return Number of events in batches the SecurityService failed to apply, e.g. on a repository error
+     */
+    public long getFailedEventCount() {
+        return failedEvents.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return Number of events published but not yet applied
+     */
+    public long getBacklog() {
+        return Math.max(0, claimSequence.get() - consumedSequence.get());
+    }
+
+    /**
+     * Applies every event already published, then stops the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long next = 0;
+        int idleSpins = 0;
+        while (true) {
+            int drained = drain(next);
+            if (drained > 0) {
+                next += drained;
+                idleSpins = 0;
+            } else if (closed) {
+                if (publishedSequences.get((int) next & mask) != next) {
+                    return;
+                }
+            } else if (++idleSpins < SPINS_BEFORE_PARKING) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Applies the published events starting at the given sequence, up to the maximum batch size.
+     *
+     * @return Number of events taken from the ring buffer
+     */
+    private int drain(long first) {
+        SensorIdIndex index = securityService.sensorIndex();
+        int taken = 0;
+        int batchSize = 0;
+        while (taken < maxBatchSize) {
+            long sequence = first + taken;
+            int slot = (int) sequence & mask;
+            if (publishedSequences.get(slot) != sequence) {
+                break;
+            }
+            taken++;
+
+            int sensorSlot = index.indexOf(idMostSignificantBits[slot], idLeastSignificantBits[slot]);
+            if (sensorSlot < 0 || timestamps[slot] < index.timestampAt(sensorSlot)) {
+                droppedEvents.increment();
+                continue;
+            }
+            index.setTimestampAt(sensorSlot, timestamps[slot]);
+            batchSensors[batchSize] = index.sensorAt(sensorSlot);
+            batchStates[batchSize] = states[slot];
+            batchSlots[batchSize] = slot;
+            batchSize++;
+        }
+        if (taken == 0) {
+            return 0;
+        }
+
+        if (batchSize > 0) {
+            try {
+                securityService.applySensorEvents(batchSensors, batchStates, batchWasActive, batchSize);
+                long now = System.nanoTime();
+                for (int i = 0; i < batchSize; i++) {
+                    latency.record(now - publishNanos[batchSlots[i]]);
+                }
+                appliedEvents.add(batchSize);
+                batches.increment();
+            } catch (RuntimeException e) {
+                //keep the loop alive, a failing repository shouldn't stop later events from being applied
+                failedEvents.add(batchSize);
+            }
+            for (int i = 0; i < batchSize; i++) {
+                batchSensors[i] = null;
+            }
+        }
+        //free the slots for publishers only once they have been read
+        consumedSequence.lazySet(first + taken);
+        return taken;
+    }
+}
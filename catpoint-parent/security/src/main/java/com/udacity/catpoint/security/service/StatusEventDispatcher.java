@@ -0,0 +1,268 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Delivers status events to StatusListeners without running them on the thread that changed the
+ * state. Every listener has its own queue and is called on its own executor, one event at a time,
+ * so a slow listener only delays itself.
+ * <p>
+ * A listener can opt into coalescing: it is then only told the latest alarm status and cat
+ * verdict, and at most one sensor status change per frame interval.
+ */
+class StatusEventDispatcher {
+
+    //shared by listeners that don't name an executor, threads are only kept while events flow
+    private static final ExecutorService BACKGROUND = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "status-listener-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //defers throttled sensor notifications to the next frame
+    private static final ScheduledExecutorService FRAME_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "status-listener-frame-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return Executor used for listeners that don't need a particular thread
+     */
+    static Executor backgroundExecutor() {
+        return BACKGROUND;
+    }
+
+    /**
+     * @param executor Executor the listener is called on
+     * @param frameIntervalNanos Minimum time between two sensor status notifications, or 0 to
+     *                           deliver every event in order without coalescing
+     */
+    void subscribe(StatusListener listener, Executor executor, long frameIntervalNanos) {
+        synchronized (subscriptions) {
+            if (subscriptions.stream().noneMatch(subscription -> subscription.listener == listener)) {
+                subscriptions.add(frameIntervalNanos > 0
+                        ? new CoalescingSubscription(listener, executor, frameIntervalNanos)
+                        : new QueuedSubscription(listener, executor));
+            }
+        }
+    }
+
+    void unsubscribe(StatusListener listener) {
+        synchronized (subscriptions) {
+            subscriptions.removeIf(subscription -> {
+                if (subscription.listener != listener) {
+                    return false;
+                }
+                subscription.cancelled = true;
+                return true;
+            });
+        }
+    }
+
+    void alarmStatusChanged(AlarmStatus status) {
+        subscriptions.forEach(subscription -> subscription.alarmStatusChanged(status));
+    }
+
+    void catDetected(boolean catDetected) {
+        subscriptions.forEach(subscription -> subscription.catDetected(catDetected));
+    }
+
+    void sensorStatusChanged() {
+        subscriptions.forEach(Subscription::sensorStatusChanged);
+    }
+
+    private abstract static class Subscription {
+        final StatusListener listener;
+        private final Executor executor;
+        //true while a delivery task is queued on the executor or running
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean cancelled;
+
+        Subscription(StatusListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        abstract void alarmStatusChanged(AlarmStatus status);
+
+        abstract void catDetected(boolean catDetected);
+
+        abstract void sensorStatusChanged();
+
+        /**
+         * Delivers whatever is pending to the listener.
+         */
+        abstract void deliver();
+
+        /**
+         * @return True if something is waiting that the next delivery run would hand to the listener
+         */
+        abstract boolean hasPending();
+
+        void schedule() {
+            if (!cancelled && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::run);
+            }
+        }
+
+        private void run() {
+            try {
+                if (!cancelled) {
+                    deliver();
+                }
+            } finally {
+                //only clear the flag once delivered, so no second run can start while this one is delivering
+                scheduled.set(false);
+            }
+            //events posted after deliver() drained the queue but before the flag was cleared found
+            // the flag set and did not schedule, so pick them up here
+            if (hasPending()) {
+                schedule();
+            }
+        }
+
+        void call(Consumer<StatusListener> event) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                //report it like an uncaught exception, but keep delivering to this listener
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    /**
+     * Delivers every event, in the order they were posted.
+     */
+    private static class QueuedSubscription extends Subscription {
+        private final Queue<Consumer<StatusListener>> events = new ConcurrentLinkedQueue<>();
+
+        QueuedSubscription(StatusListener listener, Executor executor) {
+            super(listener, executor);
+        }
+
+        @Override
+        void alarmStatusChanged(AlarmStatus status) {
+            post(listener -> listener.notify(status));
+        }
+
+        @Override
+        void catDetected(boolean catDetected) {
+            post(listener -> listener.catDetected(catDetected));
+        }
+
+        @Override
+        void sensorStatusChanged() {
+            post(StatusListener::sensorStatusChanged);
+        }
+
+        private void post(Consumer<StatusListener> event) {
+            events.add(event);
+            schedule();
+        }
+
+        @Override
+        void deliver() {
+            Consumer<StatusListener> event;
+            while (!cancelled && (event = events.poll()) != null) {
+                call(event);
+            }
+        }
+
+        @Override
+        boolean hasPending() {
+            return !events.isEmpty();
+        }
+    }
+
+    /**
+     * Keeps only the latest alarm status and cat verdict, and throttles sensor status changes to
+     * one per frame interval.
+     */
+    private static class CoalescingSubscription extends Subscription {
+        private final long frameIntervalNanos;
+        private final AtomicReference<AlarmStatus> alarmStatus = new AtomicReference<>();
+        private final AtomicReference<Boolean> catDetected = new AtomicReference<>();
+        private final AtomicBoolean sensorsChanged = new AtomicBoolean();
+        private final AtomicBoolean frameTimerPending = new AtomicBoolean();
+        //only touched by delivery runs, which never overlap and are ordered by the scheduled flag
+        private long lastSensorDeliveryNanos;
+        private boolean sensorsDelivered;
+
+        CoalescingSubscription(StatusListener listener, Executor executor, long frameIntervalNanos) {
+            super(listener, executor);
+            this.frameIntervalNanos = frameIntervalNanos;
+        }
+
+        @Override
+        void alarmStatusChanged(AlarmStatus status) {
+            alarmStatus.set(status);
+            schedule();
+        }
+
+        @Override
+        void catDetected(boolean catDetected) {
+            this.catDetected.set(catDetected);
+            schedule();
+        }
+
+        @Override
+        void sensorStatusChanged() {
+            if (!sensorsChanged.getAndSet(true)) {
+                schedule();
+            }
+        }
+
+        @Override
+        void deliver() {
+            AlarmStatus status = alarmStatus.getAndSet(null);
+            if (status != null) {
+                call(listener -> listener.notify(status));
+            }
+            Boolean cat = catDetected.getAndSet(null);
+            if (cat != null) {
+                call(listener -> listener.catDetected(cat));
+            }
+            if (!sensorsChanged.get()) {
+                return;
+            }
+            long now = System.nanoTime();
+            long wait = sensorsDelivered ? lastSensorDeliveryNanos + frameIntervalNanos - now : 0;
+            if (wait <= 0) {
+                sensorsChanged.set(false);
+                sensorsDelivered = true;
+                lastSensorDeliveryNanos = now;
+                call(StatusListener::sensorStatusChanged);
+            } else if (frameTimerPending.compareAndSet(false, true)) {
+                FRAME_TIMER.schedule(() -> {
+                    frameTimerPending.set(false);
+                    schedule();
+                }, wait, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        boolean hasPending() {
+            //throttled sensor changes are picked up by the frame timer instead
+            return alarmStatus.get() != null || catDetected.get() != null
+                    || sensorsChanged.get() && !frameTimerPending.get();
+        }
+    }
+}
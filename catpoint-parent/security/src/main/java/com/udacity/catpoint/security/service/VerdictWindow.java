@@ -0,0 +1,80 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageClassification;
+
+/**
+ * Fixed-size ring of a camera's latest classifications, which vote on whether the camera sees a
+ * cat. The camera starts seeing a cat once enough of the frames in the window vote for one, and
+ * only stops once the cat votes drop to the lower clear count, so a single noisy frame can't flip
+ * the verdict either way.
+ * <p>
+ * Not thread safe, the CameraRegistry guards each camera's window.
+ */
+class VerdictWindow {
+
+    private final ImageClassification[] frames;
+    private final boolean[] votes;
+    private final int catVotes;
+    private final int clearVotes;
+    private int next;
+    private int catVoteCount;
+    private boolean catDetected;
+
+    /**
+     * @param windowFrames Number of latest frames that vote
+     * @param catVotes Cat votes needed for the camera to start seeing a cat
+     * @param clearVotes Cat votes at or below which the camera stops seeing a cat
+     * @param catDetected The camera's verdict before the first frame
+     */
+    VerdictWindow(int windowFrames, int catVotes, int clearVotes, boolean catDetected) {
+        this.frames = new ImageClassification[windowFrames];
+        this.votes = new boolean[windowFrames];
+        this.catVotes = catVotes;
+        this.clearVotes = clearVotes;
+        this.catDetected = catDetected;
+    }
+
+    /**
+     * Adds a frame, replacing the oldest one once the window is full.
+     *
+     * @return The camera's verdict after the vote
+     */
+    boolean add(ImageClassification classification, float confidenceThreshold) {
+        boolean vote = classification.containsCat(confidenceThreshold);
+        if (votes[next]) {
+            catVoteCount--;
+        }
+        frames[next] = classification;
+        votes[next] = vote;
+        if (vote) {
+            catVoteCount++;
+        }
+        next = (next + 1) % frames.length;
+        return decide();
+    }
+
+    /**
+     * Recounts the votes of the frames in the window for a new threshold.
+     *
+     * @return The camera's verdict after the vote
+     */
+    boolean applyThreshold(float confidenceThreshold) {
+        catVoteCount = 0;
+        for (int i = 0; i < frames.length; i++) {
+            votes[i] = frames[i] != null && frames[i].containsCat(confidenceThreshold);
+            if (votes[i]) {
+                catVoteCount++;
+            }
+        }
+        return decide();
+    }
+
+    private boolean decide() {
+        if (catVoteCount >= catVotes) {
+            catDetected = true;
+        } else if (catVoteCount <= clearVotes) {
+            catDetected = false;
+        }
+        return catDetected;
+    }
+}
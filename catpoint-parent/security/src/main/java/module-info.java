@@ -4,6 +4,10 @@ module security {
     requires com.google.gson;
     requires com.google.common;
     requires java.prefs;
+    requires jdk.httpserver;
+    requires java.management;
     requires image;
+    requires org.slf4j;
     opens com.udacity.catpoint.security.data to com.google.gson;
+    exports com.udacity.catpoint.security.metrics to java.management;
 }
\ No newline at end of file
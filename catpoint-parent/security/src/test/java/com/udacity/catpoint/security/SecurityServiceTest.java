@@ -1,18 +1,46 @@
 package com.udacity.catpoint.security;
 
+import com.udacity.catpoint.image.service.AsyncImageService;
+import com.udacity.catpoint.image.service.ImageClassification;
 import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.ScoringImageService;
+import com.udacity.catpoint.security.application.StatusListener;
 import com.udacity.catpoint.security.data.*;
+import com.udacity.catpoint.security.metrics.CatpointMetrics;
+import com.udacity.catpoint.security.service.CameraFeed;
+import com.udacity.catpoint.security.service.CameraRegistry;
+import com.udacity.catpoint.security.service.CameraSource;
+import com.udacity.catpoint.security.service.ImageAnalysisPipeline;
+import com.udacity.catpoint.security.service.MotionGate;
 import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorEventLoop;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,36 +58,42 @@ public class SecurityServiceTest {
 
     private BufferedImage bufferedImage;
 
-    public void init() {
+    @BeforeEach
+    public void setUp() {
         securityRepository = mock(SecurityRepository.class);
         imageService = mock(ImageService.class);
         bufferedImage = mock(BufferedImage.class);
-        securityService = new SecurityService(securityRepository, imageService);
 
         doorSensor = new Sensor("Door Sensor", SensorType.DOOR);
         windowSensor = new Sensor("Window Sensor", SensorType.WINDOW);
     }
 
+    /**
+     * Creates the service once the repository has been stubbed, as the service loads its state
+     * from the repository when it is constructed.
+     */
+    public void init() {
+        securityService = new SecurityService(securityRepository, imageService);
+        // only verify what happens after the state has been loaded
+        clearInvocations(securityRepository);
+    }
+
     //    1. If alarm is armed and a sensor becomes activated, put the system into pending alarm status.
     @Test
     public void test_armed_sensorActivated_setToPendingAlarm() {
-        init();
         // current arming status to be armed home, and alarm status to be no alarm
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
 
+        init();
         // activate the sensor
         securityService.changeSensorActivationStatus(doorSensor,true);
 
-        // alarm status should be checked twice, once to confirm it's not already in alarm state,
-        // then to check the current alarm state to modify while activating or deactivating
-        verify(securityRepository, times(3)).getAlarmStatus();
-        // arming status should be checked once to ensure it is not disarmed
-        verify(securityRepository, times(1)).getArmingStatus();
         // alarm status should be set to pending alarm but never to alarm or no alarm
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.PENDING_ALARM);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.ALARM);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
         // sensor status should be updated to active
         assertTrue(doorSensor.getActive());
         // sensor status should be updated in the repository
@@ -69,23 +103,19 @@ public class SecurityServiceTest {
     //    2. If alarm is armed and a sensor becomes activated and the system is already pending alarm, set the alarm status to alarm.
     @Test
     public void test_armed_sensorActivated_inPendingAlarm_setToAlarm() {
-        init();
         // current arming status to be armed home, and alarm status to be pending alarm
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
 
+        init();
         // activate the sensor
         securityService.changeSensorActivationStatus(doorSensor, true);
 
-        // alarm status should be checked twice, once to confirm it's not already in alarm state,
-        // then to check the current alarm state to modify while activating or deactivating
-        verify(securityRepository, times(3)).getAlarmStatus();
-        // arming status should be checked once to ensure it is not disarmed
-        verify(securityRepository, times(1)).getArmingStatus();
         // alarm status should be set to alarm but never to pending alarm or no alarm
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.PENDING_ALARM);
         verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
         // sensor status should be updated to active
         assertTrue(doorSensor.getActive());
         // sensor status should be updated in the repository
@@ -95,25 +125,23 @@ public class SecurityServiceTest {
     //    3. If pending alarm and all sensors are inactive, return to no alarm state.
     @Test
     public void test_pendingAlarm_allSensorsInactive_setToNoAlarmState() {
-        init();
         // activate all sensors, current alarm status to be pending alarm
         doorSensor.setActive(true);
         windowSensor.setActive(true);
+        when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
 
+        init();
         // deactivate door sensor
         securityService.changeSensorActivationStatus(doorSensor, false);
 
         // deactivate window sensor
         securityService.changeSensorActivationStatus(windowSensor, false);
 
-        // alarm status should be checked 4 times, twice (once for each sensor) to confirm it's not already in alarm state,
-        // then twice (once for each sensor) to check the current alarm state to modify while activating or deactivating
-        verify(securityRepository, times(4)).getAlarmStatus();
-        // arming status should never be checked as deactivating
-        verify(securityRepository, never()).getArmingStatus();
-        // alarm status should be set to no alarm twice (once for each sensor)
-        verify(securityRepository, times(2)).setAlarmStatus(AlarmStatus.NO_ALARM);
+        // alarm status should be set to no alarm by the first deactivation, the second finds it already cleared
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.NO_ALARM);
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+        assertEquals(0, securityService.getActiveSensorCount());
         // door sensor status should be updated to inactive
         assertFalse(doorSensor.getActive());
         // door sensor status should be updated in the repository
@@ -127,18 +155,15 @@ public class SecurityServiceTest {
     //    4. If alarm is active, change in sensor state should not affect the alarm state.
     @Test
     public void test_alarmActive_changeSensorState_alarmStateNotAffected() {
-        init();
         // activate door sensor, alarm status to be alarm
         doorSensor.setActive(true);
+        when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor));
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.ALARM);
 
+        init();
         // deactivate door sensor
         securityService.changeSensorActivationStatus(doorSensor, false);
 
-        // alarm status to be checked once to confirm it is in alarm state
-        verify(securityRepository, times(1)).getAlarmStatus();
-        // arming status should never be checked as it is in alarm state
-        verify(securityRepository, never()).getArmingStatus();
         // alarm status should never be changed
         verify(securityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
         // door sensor status should be updated to inactive
@@ -150,19 +175,15 @@ public class SecurityServiceTest {
     //    5. If a sensor is activated while already active and the system is in pending state, change it to alarm state.
     @Test
     public void test_activateAlreadyActiveSensor_inPendingAlarm_setToAlarm() {
-        init();
         // activate door sensor, alarm status to be pending alarm
         doorSensor.setActive(true);
+        when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor));
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
 
+        init();
         // re-activate door sensor
         securityService.changeSensorActivationStatus(doorSensor, true);
 
-        // alarm status should be checked twice, once to confirm it's not already in alarm state,
-        // then to check the current alarm state to modify while activating or deactivating
-        verify(securityRepository, times(3)).getAlarmStatus();
-        // arming status should be checked once to ensure it is not disarmed
-        verify(securityRepository, times(1)).getArmingStatus();
         // alarm status should not be affected
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
         // door sensor status should remain in active state
@@ -175,17 +196,13 @@ public class SecurityServiceTest {
     @ParameterizedTest
     @EnumSource(AlarmStatus.class)
     public void test_deactivateAlreadyInactiveSensor_alarmStateNotAffected(AlarmStatus alarmStatus) {
-        init();
         // set to one of the alarm statuses
         when(securityRepository.getAlarmStatus()).thenReturn(alarmStatus);
 
+        init();
         // by default the sensor is inactive, deactivate door sensor
         securityService.changeSensorActivationStatus(doorSensor, false);
 
-        // get alarm status should be called once
-        verify(securityRepository, times(1)).getAlarmStatus();
-        // get arming status should not be called
-        verify(securityRepository, never()).getArmingStatus();
         // alarm status should never change
         verify(securityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
         // door sensor status should remain in inactive state
@@ -197,18 +214,16 @@ public class SecurityServiceTest {
     //    7. If the image service identifies an image containing a cat while the system is armed-home, put the system into alarm status.
     @Test
     public void test_armedHome_catDetected_setToAlarm() {
-        init();
         // set armed status to armed home, make cat detected true
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
 
+        init();
         // process the image
         securityService.processImage(bufferedImage);
 
         // image service should be called once to check if it contains cat
         verify(imageService,times(1)).imageContainsCat(any(BufferedImage.class), anyFloat());
-        // arming status should be checked once to ensure it is in armed home state
-        verify(securityRepository, times(1)).getArmingStatus();
         // sensor status check should not happen as the cat is detected
         verify(securityRepository, never()).getSensors();
         // alarm status should be set to alarm
@@ -217,62 +232,388 @@ public class SecurityServiceTest {
 
     @Test
     public void test_armedAway_catDetected_alarmNotAffected() {
-        init();
         // set armed status to armed away, make cat detected true
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
 
+        init();
         // process the image
         securityService.processImage(bufferedImage);
 
         // image service should be called once to check if the image contains cat
         verify(imageService,times(1)).imageContainsCat(any(BufferedImage.class), anyFloat());
-        // arming status should be checked once to ensure it is in armed home state
-        verify(securityRepository, times(1)).getArmingStatus();
         // sensor status check should not happen as the cat is detected
         verify(securityRepository, never()).getSensors();
         // alarm status should not be affected as it is in armed away state
         verify(securityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
     }
 
+    @Test
+    public void test_armedHome_catDetectedAsync_setToAlarm() throws Exception {
+        // set armed status to armed home, make cat detected true
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+
+        init();
+        // process the image in the background and wait for the verdict
+        assertTrue(securityService.processImageAsync(bufferedImage).get(5, TimeUnit.SECONDS));
+
+        // image service should be called once to check if it contains cat
+        verify(imageService, times(1)).imageContainsCat(any(BufferedImage.class), anyFloat());
+        // alarm status should be set to alarm
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    public void test_asyncImageService_framesPipelined_staleVerdictIgnored() throws Exception {
+        // set armed status to armed home, answer each image only when the test completes its future
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        List<CompletableFuture<ImageClassification>> pending = new CopyOnWriteArrayList<>();
+        AsyncImageService asyncImageService = image -> {
+            CompletableFuture<ImageClassification> classification = new CompletableFuture<>();
+            pending.add(classification);
+            return classification;
+        };
+        securityService = new SecurityService(securityRepository, asyncImageService);
+        clearInvocations(securityRepository);
+        // a single worker, but up to four images in flight
+        securityService.configureImageAnalysis(1, 4, 4, ImageAnalysisPipeline.BackPressurePolicy.DROP_OLDEST, Runnable::run);
+
+        CompletableFuture<Boolean> first = securityService.processImageAsync(bufferedImage);
+        securityService.processImageAsync(bufferedImage);
+        CompletableFuture<Boolean> third = securityService.processImageAsync(bufferedImage);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pending.size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // every image should be sent without waiting for the previous verdict
+        assertEquals(3, pending.size());
+
+        // the latest image shows a cat, then the verdict for the oldest image arrives
+        pending.get(2).complete(ImageClassification.cat(90));
+        pending.get(0).complete(ImageClassification.NONE);
+
+        assertTrue(third.get(5, TimeUnit.SECONDS));
+        assertFalse(first.get(5, TimeUnit.SECONDS));
+        // the stale verdict should not clear the cat detected by the later image
+        assertTrue(securityService.getState().isCatDetected());
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+        verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    public void test_scoringImageService_thresholdRaised_cachedScoreJudgedAgain() {
+        // set armed status to armed home, the image service scores every image at 70% cat
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        AtomicInteger classifications = new AtomicInteger();
+        ScoringImageService scoringImageService = image -> {
+            classifications.incrementAndGet();
+            return ImageClassification.cat(70);
+        };
+        securityService = new SecurityService(securityRepository, scoringImageService);
+        clearInvocations(securityRepository);
+
+        securityService.processImage(bufferedImage);
+        assertEquals(70, securityService.getCatConfidence(CameraRegistry.DEFAULT_CAMERA_ID));
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+
+        // a stricter threshold should no longer see a cat in the same score
+        securityService.setCatConfidenceThreshold(80);
+
+        assertFalse(securityService.getState().isCatDetected());
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.NO_ALARM);
+        // the image should not be classified again
+        assertEquals(1, classifications.get());
+    }
+
+    @Test
+    public void test_frameVoting_noisyFrames_alarmWrittenOnce() {
+        // set armed status to armed home, 3 of the latest 5 frames must show a cat, at most 1 to clear it
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        boolean[] frames = {false, true, false, false, true, false, true, true, true, false, false, false, false};
+        AtomicInteger frame = new AtomicInteger();
+        ScoringImageService scoringImageService = image ->
+                frames[frame.getAndIncrement()] ? ImageClassification.cat(90) : ImageClassification.NONE;
+        securityService = new SecurityService(securityRepository, scoringImageService);
+        securityService.setFrameVoting(5, 3, 1);
+        clearInvocations(securityRepository);
+
+        // a cat in 2 of 5 frames is noise
+        for (int i = 0; i < 7; i++) {
+            securityService.processImage(bufferedImage);
+        }
+        assertFalse(securityService.getState().isCatDetected());
+        verify(securityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
+
+        // the third cat frame in the window raises the alarm, and the alarm holds while cats drop out
+        for (int i = 7; i < 12; i++) {
+            securityService.processImage(bufferedImage);
+        }
+        assertTrue(securityService.getState().isCatDetected());
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
+
+        // down to one cat frame in the window, the cat is gone
+        securityService.processImage(bufferedImage);
+        assertFalse(securityService.getState().isCatDetected());
+        verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.NO_ALARM);
+        verify(securityRepository, times(2)).setAlarmStatus(any(AlarmStatus.class));
+    }
+
+    @Test
+    public void test_motionGate_unchangedImage_lastVerdictReused() {
+        // set armed status to armed home, make cat detected true, gate images on motion
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        init();
+        securityService.setMotionGateFactory(MotionGate::new);
+        BufferedImage cameraImage = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+
+        // process the same image twice
+        securityService.processImage(cameraImage);
+        securityService.processImage(cameraImage);
+
+        // image service should only be called for the first image
+        verify(imageService, times(1)).imageContainsCat(any(BufferedImage.class), anyFloat());
+        // the cat verdict should still be applied for both images
+        verify(securityRepository, times(2)).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    public void test_twoCameras_otherCameraSeesNoCat_alarmNotCleared() {
+        // set armed status to armed home, the front camera sees a cat and the back camera does not
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        BufferedImage backImage = mock(BufferedImage.class);
+        when(imageService.imageContainsCat(eq(bufferedImage), anyFloat())).thenReturn(true);
+        when(imageService.imageContainsCat(eq(backImage), anyFloat())).thenReturn(false);
+        init();
+        securityService.registerCamera(new Camera("front", CameraLocation.EXTERIOR, 2));
+        securityService.registerCamera(new Camera("back", CameraLocation.INTERIOR, 1));
+
+        // process an image from each camera
+        securityService.processImage("front", bufferedImage);
+        securityService.processImage("back", backImage);
+
+        // each camera keeps its own verdict
+        assertTrue(securityService.isCatDetected("front"));
+        assertFalse(securityService.isCatDetected("back"));
+        // the front camera still sees the cat, so the alarm should not be cleared
+        verify(securityRepository, times(2)).setAlarmStatus(AlarmStatus.ALARM);
+        verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    public void test_cameraSeeingCatUnregistered_noActiveSensors_alarmCleared() {
+        // set armed status to armed home, the front camera sees a cat
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        init();
+        securityService.registerCamera(new Camera("front", CameraLocation.EXTERIOR, 2));
+        securityService.processImage("front", bufferedImage);
+        verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
+
+        // remove the only camera that sees the cat
+        securityService.unregisterCamera("front");
+
+        // no camera sees a cat anymore and no sensor is active, so the alarm should be cleared
+        assertFalse(securityService.getState().isCatDetected());
+        verify(securityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    public void test_cameraUnregisteredDuringClassification_noCatLeftCounted() throws Exception {
+        CameraRegistry registry = new CameraRegistry();
+        registry.register(new Camera("front", CameraLocation.EXTERIOR, 1));
+        CountDownLatch classifying = new CountDownLatch(1);
+        CountDownLatch unregistered = new CountDownLatch(1);
+        // a cat verdict that takes a while to decide, giving the removal a chance to land in the middle
+        ImageClassification slowCat = new ImageClassification(List.of()) {
+            @Override
+            public boolean containsCat(float confidenceThreshold) {
+                classifying.countDown();
+                try {
+                    unregistered.await(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> classified = executor.submit(() -> registry.updateClassification("front", slowCat, 50));
+            assertTrue(classifying.await(5, TimeUnit.SECONDS));
+            Future<?> removed = executor.submit(() -> {
+                registry.unregister("front");
+                unregistered.countDown();
+            });
+            classified.get(5, TimeUnit.SECONDS);
+            removed.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        // the removed camera's verdict should not be counted once it is gone
+        assertTrue(registry.getCameras().isEmpty());
+        assertFalse(registry.anyCatDetected());
+    }
+
+    @Test
+    public void test_cameraUnregistered_queuedFramesCancelled() throws Exception {
+        // answer each image only when the test completes its future
+        List<CompletableFuture<ImageClassification>> pending = new CopyOnWriteArrayList<>();
+        AsyncImageService asyncImageService = image -> {
+            CompletableFuture<ImageClassification> classification = new CompletableFuture<>();
+            pending.add(classification);
+            return classification;
+        };
+        securityService = new SecurityService(securityRepository, asyncImageService);
+        // a single image in flight, the next one waits in the camera's queue
+        securityService.configureImageAnalysis(1, 1, 4, ImageAnalysisPipeline.BackPressurePolicy.DROP_OLDEST, Runnable::run);
+        securityService.registerCamera(new Camera("front", CameraLocation.EXTERIOR, 1));
+        securityService.processImageAsync("front", bufferedImage);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pending.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<Boolean> queued = securityService.processImageAsync("front", bufferedImage);
+
+        securityService.unregisterCamera("front");
+
+        // the waiting image should be dropped rather than analyzed once the worker is free
+        assertTrue(queued.isCancelled());
+        pending.get(0).complete(ImageClassification.NONE);
+        Thread.sleep(50);
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void test_cameraUnregisteredWhileFrameAnalyzed_verdictDropped() throws Exception {
+        // set armed status to armed home, the image service sees a cat once the test lets it answer
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        CountDownLatch classifying = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        ScoringImageService scoringImageService = image -> {
+            classifying.countDown();
+            try {
+                answer.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ImageClassification.cat(90);
+        };
+        securityService = new SecurityService(securityRepository, scoringImageService);
+        clearInvocations(securityRepository);
+        securityService.configureImageAnalysis(1, 4, ImageAnalysisPipeline.BackPressurePolicy.COALESCE_LATEST, Runnable::run);
+        securityService.registerCamera(new Camera("front", CameraLocation.EXTERIOR, 2));
+
+        // the camera is removed while its frame is being analyzed
+        CompletableFuture<Boolean> analysis = securityService.processImageAsync("front", bufferedImage);
+        assertTrue(classifying.await(5, TimeUnit.SECONDS));
+        securityService.unregisterCamera("front");
+        answer.countDown();
+        analysis.get(5, TimeUnit.SECONDS);
+
+        // the late verdict should neither bring the camera back nor raise the alarm
+        assertTrue(securityService.getCameras().isEmpty());
+        assertFalse(securityService.getState().isCatDetected());
+        verify(securityRepository, never()).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    public void test_cameraSeeingNoCatUnregistered_alarmNotCleared() {
+        // set armed status to armed home, the front camera sees a cat and the back camera does not
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        BufferedImage backImage = mock(BufferedImage.class);
+        when(imageService.imageContainsCat(eq(bufferedImage), anyFloat())).thenReturn(true);
+        when(imageService.imageContainsCat(eq(backImage), anyFloat())).thenReturn(false);
+        init();
+        securityService.registerCamera(new Camera("front", CameraLocation.EXTERIOR, 2));
+        securityService.registerCamera(new Camera("back", CameraLocation.INTERIOR, 1));
+        securityService.processImage("front", bufferedImage);
+        securityService.processImage("back", backImage);
+
+        // remove the camera that sees no cat
+        securityService.unregisterCamera("back");
+
+        // the front camera still sees the cat
+        assertTrue(securityService.getState().isCatDetected());
+        verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    public void test_cameraFeed_streamedFrameShowsCat_setToAlarm() throws Exception {
+        // set armed status to armed home, and any image shows a cat
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        init();
+
+        // a camera that streams a single frame
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        CameraSource source = new CameraSource() {
+            private boolean sent;
+
+            @Override
+            public String getCameraId() {
+                return "stream";
+            }
+
+            @Override
+            public byte[] nextFrame() {
+                if (sent) {
+                    return null;
+                }
+                sent = true;
+                return jpeg.toByteArray();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        // the frame should be analyzed without anyone sending it
+        try (CameraFeed feed = new CameraFeed(securityService, source).start()) {
+            verify(securityRepository, timeout(5000)).setAlarmStatus(AlarmStatus.ALARM);
+        }
+        assertTrue(securityService.isCatDetected("stream"));
+    }
+
     //    8. If the image service identifies an image that does not contain a cat, change the status to no alarm as long as the sensors are not active.
     @Test
     public void test_catNotDetected_sensorsNotActive_setToNoAlarm() {
-        init();
         // make cat detected false
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
 
+        init();
         // process the image
         securityService.processImage(bufferedImage);
 
         // image service should be called once to check if the image contains cat
         verify(imageService,times(1)).imageContainsCat(any(BufferedImage.class), anyFloat());
-        // arming status should never be checked as cat is not detected
-        verify(securityRepository, never()).getArmingStatus();
-        // no cat detected now, but all the sensors should be checked once to ensure none of them are active
-        verify(securityRepository, times(1)).getSensors();
+        // no cat detected now, active sensors are counted as they change so the sensors should not be scanned
+        verify(securityRepository, never()).getSensors();
         // alarm status should be set to no alarm
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.NO_ALARM);
     }
 
     @Test
     public void test_catNotDetected_atLeastOneSensorActive_alarmStateNotAffected() {
-        init();
         // make cat detected false, activate one of the sensors
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
         doorSensor.setActive(false);
         windowSensor.setActive(true);
         when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
 
+        init();
         // process the image
         securityService.processImage(bufferedImage);
 
         // image service should be called once to check if the image contains cat
         verify(imageService,times(1)).imageContainsCat(any(BufferedImage.class), anyFloat());
-        // arming status should never be checked as cat is not detected
-        verify(securityRepository, never()).getArmingStatus();
-        // no cat detected now, but all the sensors should be checked once to ensure none of them are active
-        verify(securityRepository, times(1)).getSensors();
+        // no cat detected now, active sensors are counted as they change so the sensors should not be scanned
+        verify(securityRepository, never()).getSensors();
         // alarm status should not be affected as one of the sensors are active
         verify(securityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
     }
@@ -286,10 +627,6 @@ public class SecurityServiceTest {
 
         // arming status should be set to disarmed
         verify(securityRepository, times(1)).setArmingStatus(ArmingStatus.DISARMED);
-        // current arming status should not be checked
-        verify(securityRepository, never()).getArmingStatus();
-        // current alarm status should never be checked
-        verify(securityRepository, never()).getAlarmStatus();
         // no sensors should be updated
         verify(securityRepository, never()).updateSensor(any(Sensor.class));
         // alarm status should be set to no alarm
@@ -299,19 +636,15 @@ public class SecurityServiceTest {
     @ParameterizedTest
     @EnumSource(ArmingStatus.class)
     public void test_fromDifferentArmedStatus_disarm_setToNoAlarm(ArmingStatus armingStatus) {
-        init();
         // set current arming status (to ensure current arming status doesn't affect the behavior)
         lenient().when(securityRepository.getArmingStatus()).thenReturn(armingStatus);
 
+        init();
         // make the system disarmed
         securityService.setArmingStatus(ArmingStatus.DISARMED);
 
         // arming status should be set to disarmed
         verify(securityRepository, times(1)).setArmingStatus(ArmingStatus.DISARMED);
-        // current arming status should not be checked
-        verify(securityRepository, never()).getArmingStatus();
-        // current alarm status should never be checked
-        verify(securityRepository, never()).getAlarmStatus();
         // no sensors should be updated
         verify(securityRepository, never()).updateSensor(any(Sensor.class));
         // alarm status should be set to no alarm
@@ -321,19 +654,15 @@ public class SecurityServiceTest {
     @ParameterizedTest
     @EnumSource(AlarmStatus.class)
     public void test_withDifferentAlarmStatus_disarm_setToNoAlarm(AlarmStatus alarmStatus) {
-        init();
         // set current alarm status (to ensure current alarm status doesn't affect the behavior)
         lenient().when(securityRepository.getAlarmStatus()).thenReturn(alarmStatus);
 
+        init();
         // make the system disarmed
         securityService.setArmingStatus(ArmingStatus.DISARMED);
 
         // arming status should be set to disarmed
         verify(securityRepository, times(1)).setArmingStatus(ArmingStatus.DISARMED);
-        // current arming status should not be checked
-        verify(securityRepository, never()).getArmingStatus();
-        // current alarm status should never be checked
-        verify(securityRepository, never()).getAlarmStatus();
         // no sensors should be updated
         verify(securityRepository, never()).updateSensor(any(Sensor.class));
         // alarm status should be set to no alarm
@@ -343,19 +672,20 @@ public class SecurityServiceTest {
     //    10. If the system is armed, reset all sensors to inactive.
     @Test
     public void test_setArmedHome_setAllSensorsToInactive() {
-        init();
         // current arming status: disarmed, all sensors active
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
         when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
         securityRepository.getSensors().forEach(sensor -> sensor.setActive(true));
 
+        init();
         // set arming status to armed home
         securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
 
         // arming status should be set to armed home
         verify(securityRepository, times(1)).setArmingStatus(ArmingStatus.ARMED_HOME);
-        // all sensors should be updated
-        verify(securityRepository, times(securityRepository.getSensors().size())).updateSensor(any(Sensor.class));
+        // all sensors should be updated in a single batch
+        verify(securityRepository, times(1)).updateSensors(anyCollection());
+        verify(securityRepository, never()).updateSensor(any(Sensor.class));
         // all sensors should be inactive
         assertFalse(securityRepository.getSensors().stream().anyMatch(Sensor::getActive));
         // alarm status should not be affected
@@ -364,19 +694,20 @@ public class SecurityServiceTest {
 
     @Test
     public void test_setArmedAway_setAllSensorsToInactive() {
-        init();
         // current arming status: disarmed, all sensors active
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
         when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
         securityRepository.getSensors().forEach(sensor -> sensor.setActive(true));
 
+        init();
         // set arming status to armed away
         securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
 
         // arming status should be set to armed away
         verify(securityRepository, times(1)).setArmingStatus(ArmingStatus.ARMED_AWAY);
-        // all sensors should be updated
-        verify(securityRepository, times(securityRepository.getSensors().size())).updateSensor(any(Sensor.class));
+        // all sensors should be updated in a single batch
+        verify(securityRepository, times(1)).updateSensors(anyCollection());
+        verify(securityRepository, never()).updateSensor(any(Sensor.class));
         // all sensors should be inactive
         assertFalse(securityRepository.getSensors().stream().anyMatch(Sensor::getActive));
         // alarm status should not be affected
@@ -385,33 +716,294 @@ public class SecurityServiceTest {
 
     @Test
     public void test_setArmedAway_oneSensorActive_setAllSensorsToInactive() {
-        init();
         // current arming status: disarmed, door sensor active, window sensor inactive
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
         when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
         doorSensor.setActive(false);
         windowSensor.setActive(true);
 
+        init();
         // set arming status to armed away
         securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
 
         // arming status should be set to armed away
         verify(securityRepository, times(1)).setArmingStatus(ArmingStatus.ARMED_AWAY);
-        // all sensors should be updated
-        verify(securityRepository, times(securityRepository.getSensors().size())).updateSensor(any(Sensor.class));
+        // all sensors should be updated in a single batch
+        verify(securityRepository, times(1)).updateSensors(anyCollection());
+        verify(securityRepository, never()).updateSensor(any(Sensor.class));
         // all sensors should be inactive
         assertFalse(securityRepository.getSensors().stream().anyMatch(Sensor::getActive));
         // alarm status should not be affected
         verify(securityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
     }
 
+    @Test
+    public void test_setArmedAway_persistedInOneTransaction() {
+        // current arming status: disarmed, all sensors active
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
+        when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
+        doorSensor.setActive(true);
+        windowSensor.setActive(true);
+
+        init();
+        // set arming status to armed away
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+
+        // arming change and sensor batch should be written inside one unit of work
+        InOrder inOrder = inOrder(securityRepository);
+        inOrder.verify(securityRepository, calls(1)).beginTransaction();
+        inOrder.verify(securityRepository).setArmingStatus(ArmingStatus.ARMED_AWAY);
+        inOrder.verify(securityRepository).updateSensors(anyCollection());
+        inOrder.verify(securityRepository, calls(1)).commitTransaction();
+    }
+
+    @Test
+    public void test_addAndRemoveSensors_persistedInOneBatch() {
+        List<Sensor> sensors = List.of(doorSensor, windowSensor);
+        StatusListener statusListener = mock(StatusListener.class);
+        init();
+        // deliver on the calling thread, without coalescing
+        securityService.addStatusListener(statusListener, Runnable::run, false);
+
+        // bulk import, then bulk removal
+        securityService.addSensors(sensors);
+        securityService.removeSensors(sensors);
+
+        // each batch should be a single repository call
+        verify(securityRepository, times(1)).addSensors(sensors);
+        verify(securityRepository, times(1)).removeSensors(sensors);
+        verify(securityRepository, never()).addSensor(any(Sensor.class));
+        verify(securityRepository, never()).removeSensor(any(Sensor.class));
+        // listeners should be notified once per batch
+        verify(statusListener, times(2)).sensorStatusChanged();
+    }
+
+    @Test
+    public void test_coalescingListener_notifiedOfLatestStatusOnly() {
+        StatusListener statusListener = mock(StatusListener.class);
+        List<Runnable> deliveries = new ArrayList<>();
+        init();
+        securityService.addStatusListener(statusListener, deliveries::add, true);
+
+        // a burst of changes before the listener gets to run
+        securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        securityService.setAlarmStatus(AlarmStatus.ALARM);
+        securityService.addSensors(List.of(doorSensor));
+        securityService.removeSensors(List.of(doorSensor));
+
+        // the changes should not wait for the listener, and should be queued for it once
+        verifyNoInteractions(statusListener);
+        assertEquals(1, deliveries.size());
+        deliveries.forEach(Runnable::run);
+
+        // only the latest alarm status and a single sensor change should be delivered
+        verify(statusListener, times(1)).notify(AlarmStatus.ALARM);
+        verify(statusListener, never()).notify(AlarmStatus.PENDING_ALARM);
+        verify(statusListener, times(1)).sensorStatusChanged();
+    }
+
+    @Test
+    public void test_listenersOnThreadPool_concurrentChanges_deliveredOneAtATime() throws Exception {
+        init();
+        CountingListener queued = new CountingListener();
+        CountingListener coalescing = new CountingListener();
+        ExecutorService listenerPool = Executors.newFixedThreadPool(4);
+        ExecutorService posters = Executors.newFixedThreadPool(4);
+        try {
+            securityService.addStatusListener(queued, listenerPool, false);
+            securityService.addStatusListener(coalescing, listenerPool, true);
+
+            // change the alarm status from several threads at once, every thread ending on alarm
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(posters.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+                        securityService.setAlarmStatus(AlarmStatus.ALARM);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+
+            // every event should reach the queued listener, and the latest one the coalescing listener
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((queued.notified.get() < 2000 || coalescing.lastStatus != AlarmStatus.ALARM)
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(2000, queued.notified.get());
+            assertEquals(AlarmStatus.ALARM, coalescing.lastStatus);
+            // and neither listener should ever have been called on two threads at once
+            assertFalse(queued.overlapped);
+            assertFalse(coalescing.overlapped);
+        } finally {
+            posters.shutdown();
+            listenerPool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_instrumentedService_alarmTransitionsAndImageTimeoutsCounted() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat()))
+                .thenThrow(new IllegalStateException(new TimeoutException()));
+        CatpointMetrics metrics = new CatpointMetrics();
+        securityService = metrics.instrument(securityRepository, "mock", imageService);
+
+        // pending alarm and back, then an image analysis that times out
+        securityService.changeSensorActivationStatus(doorSensor, true);
+        securityService.changeSensorActivationStatus(doorSensor, false);
+        assertThrows(IllegalStateException.class, () -> securityService.processImage(bufferedImage));
+
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(1L, counters.get("alarm.transitions.NO_ALARM.PENDING_ALARM"));
+        assertEquals(1L, counters.get("alarm.transitions.PENDING_ALARM.NO_ALARM"));
+        assertEquals(0L, counters.get("alarm.transitions.PENDING_ALARM.ALARM"));
+        assertEquals(1L, counters.get("imageService.mock.errors"));
+        assertEquals(1L, counters.get("imageService.mock.timeouts"));
+        assertEquals(1, metrics.getLatencies().get("alarm.pendingAlarm").getCount());
+        assertEquals(1, metrics.getLatencies().get("securityService.processImage").getCount());
+        assertEquals(1, metrics.getLatencies().get("imageService.mock").getCount());
+    }
+
+    @Test
+    public void test_instrumentedRepository_batchInTransaction_onlyCommitTimed() {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        CatpointMetrics metrics = new CatpointMetrics();
+        securityService = metrics.instrument(securityRepository, "mock", imageService);
+        long before = metrics.getLatencies().get("repository.write").getCount();
+
+        // activate two sensors in one batch, which also moves the alarm to pending inside the transaction
+        securityService.changeSensorActivationStatus(List.of(doorSensor, windowSensor), true);
+
+        // the writes inside the transaction should not be timed, only the commit that persists them
+        verify(securityRepository).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        assertEquals(before + 1, metrics.getLatencies().get("repository.write").getCount());
+    }
+
+    @Test
+    public void test_concurrentSensorEvents_noActivationLost() throws Exception {
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
+        init();
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            sensors.add(new Sensor("Sensor " + i, SensorType.MOTION));
+        }
+
+        // activate the sensors from several threads at once, with every sensor activated twice
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int first = thread * 100;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < first + 200; i++) {
+                        securityService.changeSensorActivationStatus(sensors.get(i % sensors.size()), true);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // every sensor should be counted as active exactly once
+        assertEquals(sensors.size(), securityService.getActiveSensorCount(SensorType.MOTION));
+    }
+
+    @Test
+    public void test_sensorActivation_activeSensorsCountedPerType() {
+        // window sensor active at startup, door sensor inactive
+        windowSensor.setActive(true);
+        when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
+        init();
+        assertEquals(1, securityService.getActiveSensorCount(SensorType.WINDOW));
+
+        // open the door, close the window
+        securityService.changeSensorActivationStatus(doorSensor, true);
+        securityService.changeSensorActivationStatus(windowSensor, false);
+
+        // counts should follow the changes without scanning the sensors
+        verify(securityRepository, never()).getSensors();
+        assertEquals(1, securityService.getActiveSensorCount());
+        assertEquals(1, securityService.getActiveSensorCount(SensorType.DOOR));
+        assertEquals(0, securityService.getActiveSensorCount(SensorType.WINDOW));
+        assertEquals(0, securityService.getActiveSensorCounts().get(SensorType.MOTION));
+    }
+
+    @Test
+    public void test_renamedSensorActivated_repositoryReplacesSensor() throws Exception {
+        // the demo repository keeps its state in user preferences, so put them back afterwards
+        Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        prefs.exportNode(saved);
+        prefs.clear();
+        try {
+            securityService = new SecurityService(new PretendDatabaseSecurityRepositoryImpl(), imageService);
+            securityService.addSensor(doorSensor);
+            securityService.addSensor(new Sensor("Motion Sensor", SensorType.MOTION));
+            securityService.addSensor(windowSensor);
+
+            // rename the sensor so it sorts between the others, then update it
+            doorSensor.setName("Side Door");
+            securityService.changeSensorActivationStatus(doorSensor, true);
+
+            // the renamed sensor should replace the old entry rather than sit next to it
+            List<String> expected = List.of("Motion Sensor", "Side Door", "Window Sensor");
+            assertEquals(expected, names(securityService.getSensors()));
+            // and so it should be persisted
+            assertEquals(expected, names(new PretendDatabaseSecurityRepositoryImpl().getSensors()));
+        } finally {
+            prefs.clear();
+            Preferences.importPreferences(new ByteArrayInputStream(saved.toByteArray()));
+        }
+    }
+
+    private static List<String> names(Set<Sensor> sensors) {
+        List<String> names = new ArrayList<>();
+        sensors.forEach(sensor -> names.add(sensor.getName()));
+        return names;
+    }
+
+    @Test
+    public void test_sensorEventLoop_eventsAppliedInOrder_staleEventDropped() {
+        // armed home with two known sensors
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        when(securityRepository.getSensors()).thenReturn(Set.of(doorSensor, windowSensor));
+        init();
+
+        // open the door, then the window, then a late event from before the door opened
+        SensorEventLoop eventLoop = new SensorEventLoop(securityService, 16, 4);
+        eventLoop.publish(doorSensor.getSensorId(), true, 2);
+        eventLoop.publish(windowSensor.getSensorId(), true, 3);
+        eventLoop.publish(doorSensor.getSensorId(), false, 1);
+        eventLoop.close();
+
+        // both activations should be applied in order, raising the alarm
+        assertEquals(2, eventLoop.getAppliedEventCount());
+        assertEquals(1, eventLoop.getDroppedEventCount());
+        assertTrue(doorSensor.getActive());
+        assertTrue(windowSensor.getActive());
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(2, securityService.getActiveSensorCount());
+        verify(securityRepository, atLeastOnce()).updateSensors(anyCollection());
+        verify(securityRepository, never()).updateSensor(any(Sensor.class));
+    }
+
     //    11. If the system is armed-home while the camera shows a cat, set the alarm status to alarm.
     @Test
     public void test_setArmedHome_catDetected_setToAlarm() {
-        init();
         // current arming status: disarmed, camera shows cat
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        init();
         securityService.processImage(bufferedImage);
 
         // set arming status to armed home
@@ -427,10 +1019,10 @@ public class SecurityServiceTest {
 
     @Test
     public void test_setArmedAway_catDetected_alarmNotAffected() {
-        init();
         // current arming status: disarmed, camera shows cat
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.DISARMED);
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        init();
         securityService.processImage(bufferedImage);
 
         // set arming status to armed away
@@ -446,10 +1038,10 @@ public class SecurityServiceTest {
 
     @Test
     public void test_setArmedHomeFromAway_catDetected_setToAlarm() {
-        init();
         // current arming status: armed away, camera shows cat
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
         when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
+        init();
         securityService.processImage(bufferedImage);
 
         // set arming status to armed home
@@ -462,4 +1054,33 @@ public class SecurityServiceTest {
         // alarm status should be set to alarm
         verify(securityRepository, times(1)).setAlarmStatus(AlarmStatus.ALARM);
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts alarm status notifications and records whether two of them ever ran at once.
+     */
+    private static class CountingListener implements StatusListener {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger notified = new AtomicInteger();
+        private volatile boolean overlapped;
+        private volatile AlarmStatus lastStatus;
+
+        @Override
+        public void notify(AlarmStatus status) {
+            if (inFlight.incrementAndGet() > 1) {
+                overlapped = true;
+            }
+            Thread.yield();
+            lastStatus = status;
+            notified.incrementAndGet();
+            inFlight.decrementAndGet();
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+        }
+    }
+}
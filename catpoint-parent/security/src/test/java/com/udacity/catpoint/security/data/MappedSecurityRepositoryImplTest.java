@@ -0,0 +1,200 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedSecurityRepositoryImplTest {
+
+    //file layout, see MappedSecurityRepositoryImpl
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 24;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void test_sameInstance_sensorsAndStatusRoundTripped() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertTrue(repository.getSensors().isEmpty());
+            assertEquals(AlarmStatus.NO_ALARM, repository.getAlarmStatus());
+            assertEquals(ArmingStatus.DISARMED, repository.getArmingStatus());
+
+            repository.addSensors(List.of(door, window));
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+
+            assertEquals(Set.of(door, window), repository.getSensors());
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    public void test_reopen_earlierRecordsLoaded() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        Sensor motion = new Sensor("Motion", SensorType.MOTION);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.addSensors(List.of(door, window, motion));
+            //moves the last record into the door's slot
+            repository.removeSensor(door);
+            window.setActive(true);
+            repository.updateSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        }
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(Set.of(window, motion), repository.getSensors());
+            Sensor reloaded = find(repository, window);
+            assertEquals("Window", reloaded.getName());
+            assertEquals(SensorType.WINDOW, reloaded.getSensorType());
+            assertTrue(reloaded.getActive());
+            assertFalse(find(repository, motion).getActive());
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+        }
+    }
+
+    @Test
+    public void test_addPastInitialCapacity_fileGrownAndReopened() throws IOException {
+        List<Sensor> added = new ArrayList<>();
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            for (int i = 0; i < 200; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[i % SensorType.values().length]);
+                added.add(sensor);
+                repository.addSensor(sensor);
+            }
+        }
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(new HashSet<>(added), repository.getSensors());
+        }
+    }
+
+    @Test
+    public void test_sensorFileCutInsideFirstRecord_canStillAdd() throws IOException {
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        }
+        //keep the header but not a single whole record, leaving no capacity at all
+        try (FileChannel channel = FileChannel.open(directory.resolve("sensors.dat"), StandardOpenOption.WRITE)) {
+            channel.truncate(40);
+        }
+
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+            repository.addSensor(door);
+        }
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(Set.of(door), repository.getSensors());
+        }
+    }
+
+    @Test
+    public void test_mostlyUnusedNames_namesFileCompacted() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.addSensors(List.of(door, window));
+            for (int i = 0; i < 50; i++) {
+                door.setName("Door renamed " + i);
+                repository.updateSensor(door);
+            }
+        }
+        Path names = directory.resolve("names.dat");
+        long before = Files.size(names);
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertTrue(Files.size(names) < before / 10);
+            assertEquals("Door renamed 49", find(repository, door).getName());
+            assertEquals("Window", find(repository, window).getName());
+
+            //names appended after compaction land behind the compacted ones
+            window.setName("Back Window");
+            repository.updateSensor(window);
+        }
+        assertFalse(Files.exists(directory.resolve("names.dat.tmp")));
+        assertFalse(Files.exists(directory.resolve("sensors.dat.tmp")));
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals("Door renamed 49", find(repository, door).getName());
+            assertEquals("Back Window", find(repository, window).getName());
+        }
+    }
+
+    @Test
+    public void test_compactionStoppedBetweenMoves_finishedOnReopen() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            for (int i = 0; i < 20; i++) {
+                door.setName("Door " + i);
+                repository.updateSensor(door);
+            }
+        }
+        Path names = directory.resolve("names.dat");
+        byte[] staleNames = Files.readAllBytes(names);
+
+        //let a compaction run, then put the old names file back as if the second move never happened
+        new MappedSecurityRepositoryImpl(directory).close();
+        Files.move(names, directory.resolve("names.dat.tmp"));
+        Files.write(names, staleNames);
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals("Door 19", find(repository, door).getName());
+        }
+        assertFalse(Files.exists(directory.resolve("names.dat.tmp")));
+    }
+
+    @Test
+    public void test_removalStoppedAfterMove_duplicateDropped() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        Sensor motion = new Sensor("Motion", SensorType.MOTION);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            //one by one, so the door takes the first slot and the motion sensor the last
+            repository.addSensor(door);
+            repository.addSensor(window);
+            repository.addSensor(motion);
+        }
+        //removing the door moves the last record into its slot; stop before the count shrinks
+        try (FileChannel channel = FileChannel.open(directory.resolve("sensors.dat"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer lastRecord = ByteBuffer.allocate(RECORD_BYTES);
+            channel.read(lastRecord, HEADER_BYTES + 2 * RECORD_BYTES);
+            lastRecord.flip();
+            channel.write(lastRecord, HEADER_BYTES);
+        }
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(2, repository.getSensors().size());
+            assertFalse(repository.getSensors().contains(door));
+            //the sensor that was moved must go away for good once removed
+            repository.removeSensor(motion);
+        }
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(Set.of(window), repository.getSensors());
+        }
+    }
+
+    private static Sensor find(SecurityRepository repository, Sensor sensor) {
+        return repository.getSensors().stream()
+                .filter(sensor::equals)
+                .findFirst()
+                .orElseThrow();
+    }
+}
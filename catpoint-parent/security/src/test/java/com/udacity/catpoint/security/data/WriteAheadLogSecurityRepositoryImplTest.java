@@ -0,0 +1,155 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogSecurityRepositoryImplTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Group commit is disabled so every record is forced before the call returns, and the
+     * snapshot threshold is kept out of the way unless a test lowers it.
+     */
+    private WriteAheadLogSecurityRepositoryImpl open(int snapshotThreshold) {
+        return new WriteAheadLogSecurityRepositoryImpl(directory, 0, snapshotThreshold);
+    }
+
+    @Test
+    public void test_reopen_logReplayedIntoSameState() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        Sensor motion = new Sensor("Motion", SensorType.MOTION);
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            repository.addSensors(List.of(door, window, motion));
+            repository.removeSensor(window);
+            door.setActive(true);
+            door.setName("Front Door");
+            repository.updateSensor(door);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            assertEquals(Set.of(door, motion), repository.getSensors());
+            Sensor reloaded = find(repository, door);
+            assertEquals("Front Door", reloaded.getName());
+            assertEquals(SensorType.DOOR, reloaded.getSensorType());
+            assertTrue(reloaded.getActive());
+            assertFalse(find(repository, motion).getActive());
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    public void test_tornTail_truncatedToLastIntactRecord() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            repository.addSensor(door);
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        }
+        Path log = directory.resolve("security.log");
+        long intactLength = Files.size(log);
+
+        //a record whose header promises more payload than was written before the crash
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1, 7}, StandardOpenOption.APPEND);
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            assertEquals(intactLength, Files.size(log));
+            assertEquals(Set.of(door), repository.getSensors());
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+
+            //appends after recovery land right behind the last intact record
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+        }
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+            assertEquals(Set.of(door), repository.getSensors());
+        }
+    }
+
+    @Test
+    public void test_corruptedRecord_replayStopsThere() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            repository.addSensor(door);
+        }
+        Path log = directory.resolve("security.log");
+        long intactLength = Files.size(log);
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            repository.setAlarmStatus(AlarmStatus.ALARM);
+        }
+
+        //flip the alarm status byte of the second record so its checksum no longer matches
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 0x7F;
+        Files.write(log, bytes);
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            assertEquals(intactLength, Files.size(log));
+            assertEquals(AlarmStatus.NO_ALARM, repository.getAlarmStatus());
+            assertEquals(Set.of(door), repository.getSensors());
+        }
+    }
+
+    @Test
+    public void test_logPastThreshold_compactedIntoSnapshot() throws IOException {
+        Path log = directory.resolve("security.log");
+        Path snapshot = directory.resolve("security.snapshot");
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(4)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+            assertFalse(Files.exists(snapshot));
+
+            //the fourth record reaches the threshold, so the log is folded into the snapshot
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+            assertTrue(Files.exists(snapshot));
+            assertEquals(0, Files.size(log));
+            assertFalse(Files.exists(directory.resolve("security.snapshot.tmp")));
+
+            repository.removeSensor(window);
+            assertTrue(Files.size(log) > 0);
+        }
+
+        //the snapshot is loaded first and the log tail replayed on top of it
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(4)) {
+            assertEquals(Set.of(door), repository.getSensors());
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    public void test_getSensors_snapshotReturnedNotLiveSet() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        try (WriteAheadLogSecurityRepositoryImpl repository = open(1024)) {
+            Set<Sensor> before = repository.getSensors();
+            repository.addSensor(door);
+
+            assertTrue(before.isEmpty());
+            assertEquals(Set.of(door), repository.getSensors());
+            assertThrows(UnsupportedOperationException.class, () -> repository.getSensors().clear());
+        }
+    }
+
+    private static Sensor find(SecurityRepository repository, Sensor sensor) {
+        return repository.getSensors().stream()
+                .filter(sensor::equals)
+                .findFirst()
+                .orElseThrow();
+    }
+}
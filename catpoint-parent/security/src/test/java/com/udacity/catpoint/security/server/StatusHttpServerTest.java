@@ -0,0 +1,155 @@
+package com.udacity.catpoint.security.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Camera;
+import com.udacity.catpoint.security.data.CameraLocation;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.metrics.CatpointMetrics;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StatusHttpServerTest {
+
+    private static final Gson gson = new Gson();
+
+    private SecurityService securityService;
+    private StatusHttpServer server;
+
+    @BeforeEach
+    public void setUp() {
+        SecurityRepository securityRepository = mock(SecurityRepository.class);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        securityService = new SecurityService(securityRepository, mock(ImageService.class));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Starts the server on a free port of the loopback address.
+     */
+    private void start(CatpointMetrics metrics) throws IOException {
+        server = new StatusHttpServer(securityService, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), metrics);
+        server.start();
+    }
+
+    @Test
+    public void test_status_activeSensor_pendingAlarmAndCountsReported() throws IOException {
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        securityService.addSensor(door);
+        securityService.changeSensorActivationStatus(door, true);
+        start(null);
+
+        HttpURLConnection connection = open("/status");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("application/json"));
+        JsonObject status = gson.fromJson(read(connection), JsonObject.class);
+
+        assertEquals("ARMED_HOME", status.get("armingStatus").getAsString());
+        assertEquals("PENDING_ALARM", status.get("alarmStatus").getAsString());
+        assertFalse(status.get("catDetected").getAsBoolean());
+        assertEquals(1, status.get("activeSensorCount").getAsInt());
+        JsonObject counts = status.getAsJsonObject("activeSensorCounts");
+        assertEquals(1, counts.get("DOOR").getAsInt());
+        assertEquals(0, counts.get("WINDOW").getAsInt());
+    }
+
+    @Test
+    public void test_sensors_listedSortedWithActivation() throws IOException {
+        Sensor window = new Sensor("Window", SensorType.WINDOW);
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        securityService.addSensor(window);
+        securityService.addSensor(door);
+        securityService.changeSensorActivationStatus(window, true);
+        start(null);
+
+        JsonArray sensors = gson.fromJson(read(open("/sensors")), JsonArray.class);
+
+        assertEquals(2, sensors.size());
+        JsonObject first = sensors.get(0).getAsJsonObject();
+        assertEquals(door.getSensorId().toString(), first.get("id").getAsString());
+        assertEquals("Door", first.get("name").getAsString());
+        assertEquals("DOOR", first.get("type").getAsString());
+        assertFalse(first.get("active").getAsBoolean());
+        JsonObject second = sensors.get(1).getAsJsonObject();
+        assertEquals("Window", second.get("name").getAsString());
+        assertTrue(second.get("active").getAsBoolean());
+    }
+
+    @Test
+    public void test_cameras_registeredCameraListed() throws IOException {
+        securityService.registerCamera(new Camera("front", CameraLocation.EXTERIOR, 2));
+        start(null);
+
+        JsonArray cameras = gson.fromJson(read(open("/cameras")), JsonArray.class);
+
+        assertEquals(1, cameras.size());
+        JsonObject camera = cameras.get(0).getAsJsonObject();
+        assertEquals("front", camera.get("id").getAsString());
+        assertEquals("EXTERIOR", camera.get("location").getAsString());
+        assertEquals(2, camera.get("priority").getAsInt());
+        assertFalse(camera.get("catDetected").getAsBoolean());
+        assertEquals(0.0f, camera.get("catConfidence").getAsFloat());
+    }
+
+    @Test
+    public void test_metrics_onlyServedWhenGiven() throws IOException {
+        start(null);
+        assertEquals(404, open("/metrics").getResponseCode());
+        server.close();
+
+        CatpointMetrics metrics = new CatpointMetrics();
+        start(metrics);
+        JsonObject json = gson.fromJson(read(open("/metrics")), JsonObject.class);
+        assertTrue(json.has("latencies"));
+        assertTrue(json.has("counters"));
+    }
+
+    @Test
+    public void test_post_methodNotAllowed() throws IOException {
+        start(null);
+        HttpURLConnection connection = open("/status");
+        connection.setRequestMethod("POST");
+
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET, HEAD", connection.getHeaderField("Allow"));
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        InetSocketAddress address = server.getAddress();
+        URL url = new URL("http", address.getHostString(), address.getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}